@@ -0,0 +1,83 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the evaluation of the whole corpus, position by position
+ * or by blocks, with the scalar and the Vector API batch evaluators. Each
+ * operation evaluates one position.
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BatchEvalBenchmark {
+
+    /**
+     * Evaluation function, position by position
+     */
+    private final Eval eval = new Eval();
+    /**
+     * Scalar batch evaluator
+     */
+    private final ScalarBatchEvaluator scalar = new ScalarBatchEvaluator(eval.getDna());
+    /**
+     * Fastest batch evaluator available
+     */
+    private final BatchEvaluator vector = BatchEvaluator.create(eval.getDna());
+    /**
+     * Positions of the corpus
+     */
+    private final EvalBatch batch = new EvalBatch(Corpus.SIZE);
+
+    public BatchEvalBenchmark() {
+        if (vector instanceof ScalarBatchEvaluator)
+            throw new IllegalStateException("Vector API is not available");
+        for (int i = 0; i < Corpus.SIZE; i++)
+            batch.add(Corpus.BOARDS[i], Corpus.SIDES[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SIZE)
+    public int perBoard() {
+        int sum = 0;
+        for (int i = 0; i < Corpus.SIZE; i++)
+            sum += eval.evaluate(Corpus.BOARDS[i], Corpus.SIDES[i]);
+        return (sum);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SIZE)
+    public int scalarBatch() {
+        scalar.evaluate(batch);
+        return (batch.note(Corpus.SIZE - 1));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SIZE)
+    public int vectorBatch() {
+        vector.evaluate(batch);
+        return (batch.note(Corpus.SIZE - 1));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.Random;
+
+/**
+ * Fixed corpus of mid-game positions for benchmarks. Positions are those of
+ * games played with random legal moves from a fixed seed, taken between
+ * the 12th and the 40th half play while there are at least 20 seeds left
+ * in the holes, so that every run measures the same positions.
+ */
+final class Corpus {
+
+    /**
+     * Number of positions
+     */
+    static final int SIZE = 64;
+    /**
+     * Seed of the random generator
+     */
+    static final long SEED = 20150828L;
+    /**
+     * Boards as <code>int[]</code>
+     */
+    static final int[][] BOARDS = new int[SIZE][];
+    /**
+     * Side to move in each board
+     */
+    static final int[] SIDES = new int[SIZE];
+    /**
+     * A legal move in each board
+     */
+    static final int[] MOVES = new int[SIZE];
+
+    static {
+        generate(new Random(SEED), BOARDS, SIDES, MOVES);
+    }
+
+    /**
+     * Generate positions as those of the corpus.
+     *
+     * @param random The random generator
+     * @param boards Where to put the boards, as many as its length
+     * @param sides  Where to put the side to move in each board
+     * @param moves  Where to put a legal move in each board
+     */
+    static void generate(Random random, int[][] boards, int[] sides, int[] moves) {
+        Board board = new Board();
+        IA ia = new IA();
+        int count = 0;
+        while (count < boards.length) {
+            ia.Init();
+            board.set(ia.board);
+            int side = (random.nextBoolean() ? IA.NORTH : IA.SOUTH);
+            int plies = 12 + random.nextInt(29);
+            boolean ended = false;
+            for (int ply = 0; ply < plies && !ended; ply++) {
+                int legal = board.legalMoves(side);
+                if (legal == 0)
+                    ended = true;
+                else {
+                    board.make(randomMove(legal, random), side);
+                    side = -side;
+                }
+            }
+            int[] pits = new int[14];
+            board.get(pits);
+            int seeds = 0;
+            for (int i = 0; i < 12; i++)
+                seeds += pits[i];
+            int legal = board.legalMoves(side);
+            if (ended || seeds < 20 || legal == 0)
+                continue;
+            boards[count] = pits;
+            sides[count] = side;
+            moves[count] = randomMove(legal, random);
+            count++;
+        }
+    }
+
+    /**
+     * Choose a random move in a bitmask of legal moves.
+     */
+    private static int randomMove(int moves, Random random) {
+        int n = random.nextInt(Integer.bitCount(moves));
+        for (int move = 0; move < 12; move++)
+            if ((moves & (1 << move)) != 0 && n-- == 0)
+                return (move);
+        return (IA.NULL);
+    }
+}
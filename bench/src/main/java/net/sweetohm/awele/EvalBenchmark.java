@@ -0,0 +1,114 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the evaluation function, as a whole and feature by
+ * feature. Each operation evaluates one position of the corpus, in turn.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EvalBenchmark {
+
+    /**
+     * Evaluation function under test
+     */
+    private final Eval eval = new Eval();
+    /**
+     * Features of the positions of the corpus
+     */
+    private final Features[] features = new Features[Corpus.SIZE];
+    /**
+     * Index of the next position of the corpus
+     */
+    private int index;
+
+    public EvalBenchmark() {
+        for (int i = 0; i < Corpus.SIZE; i++) {
+            features[i] = new Features();
+            features[i].set(Corpus.BOARDS[i]);
+        }
+    }
+
+    @Benchmark
+    public int evaluate() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.evaluate(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int evaluateFeatures() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.evaluate(features[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int endEvaluation() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.endEvaluation(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int absoluteAdvance() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.absoluteAdvance(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int potential() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.potential(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int mobility() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.mobility(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int tacticMobility() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.tacticMobility(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int threats() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.threats(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int lofts() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.lofts(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public int dams() {
+        int i = index++ & (Corpus.SIZE - 1);
+        return (eval.dams(Corpus.BOARDS[i], Corpus.SIDES[i]));
+    }
+}
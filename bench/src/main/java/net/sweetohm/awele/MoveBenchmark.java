@@ -0,0 +1,58 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of move generation: <code>IA.play()</code> and
+ * <code>IA.isLegal()</code> over the corpus. Each operation processes one
+ * position of the corpus, in turn.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MoveBenchmark {
+
+    /**
+     * IA under test
+     */
+    private final IA ia = new IA();
+    /**
+     * Index of the next position of the corpus
+     */
+    private int index;
+
+    @Benchmark
+    public boolean play() {
+        int i = index++ & (Corpus.SIZE - 1);
+        System.arraycopy(Corpus.BOARDS[i], 0, ia.board, 0, 14);
+        return (ia.play(Corpus.MOVES[i], Corpus.SIDES[i]));
+    }
+
+    @Benchmark
+    public boolean isLegal() {
+        int i = index++ & (Corpus.SIZE - 1);
+        System.arraycopy(Corpus.BOARDS[i], 0, ia.board, 0, 14);
+        return (ia.isLegal(Corpus.MOVES[i], Corpus.SIDES[i]));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.Random;
+
+/**
+ * Compare the search with quiescence to full width searches, on the
+ * positions of <code>SearchComparison</code>. The reference is a full
+ * width search some half plays deeper; the search with quiescence and a
+ * full width search run at the base level. For each, numbers of nodes and
+ * time are printed, with the number of moves that agree with the
+ * reference (moves may differ for equal notes, as ties are broken
+ * randomly) and the mean distance of notes to the reference note.
+ * <p>
+ * Usage: <code>QuiescenceComparison [level] [positions] [extra]</code>,
+ * from the benchmark JAR file: <code>java -cp target/benchmarks.jar
+ * net.sweetohm.awele.QuiescenceComparison</code>.
+ */
+final class QuiescenceComparison {
+
+    /**
+     * Seed of openings
+     */
+    private static final long SEED = 2015L;
+
+    /**
+     * Run the comparison.
+     *
+     * @param args Level (default 8), number of positions (default 50) and
+     *             extra half plays of the reference search (default 4)
+     */
+    public static void main(String[] args) {
+        int level = (args.length > 0 ? Integer.parseInt(args[0]) : 8);
+        int count = (args.length > 1 ? Integer.parseInt(args[1]) : 50);
+        int extra = (args.length > 2 ? Integer.parseInt(args[2]) : 4);
+        Random random = new Random(SEED);
+        IA[] engines = {new IA(), new IA(), new IA()};
+        String[] names = {"full width, level " + (level + extra),
+                "full width, level " + level, "quiescence, level " + level};
+        engines[0].level = level + extra;
+        engines[1].level = level;
+        engines[2].level = level;
+        engines[2].quiescence = true;
+        long[] nodes = new long[engines.length];
+        long[] times = new long[engines.length];
+        int[] agree = new int[engines.length];
+        long[] errors = new long[engines.length];
+        int[] board = new int[14];
+        int positions = 0;
+        while (positions < count) {
+            int side = SearchComparison.opening(random, board);
+            if (side == 0)
+                continue;
+            positions++;
+            int reference = IA.NULL;
+            int note = 0;
+            for (int i = 0; i < engines.length; i++) {
+                IA engine = engines[i];
+                engine.clearHash();
+                System.arraycopy(board, 0, engine.board, 0, 14);
+                long start = System.nanoTime();
+                int move = engine.getMove(side);
+                times[i] += System.nanoTime() - start;
+                nodes[i] += engine.getNodes();
+                if (i == 0) {
+                    reference = move;
+                    note = engine.getNote();
+                }
+                errors[i] += Math.abs(engine.getNote() - note);
+                if (move == reference)
+                    agree[i]++;
+            }
+        }
+        System.out.println("positions: " + positions);
+        for (int i = 0; i < engines.length; i++)
+            System.out.println(String.format("%-24s %10d nodes %6d ms, same move %d/%d, note distance %.1f",
+                    names[i] + ":", nodes[i], times[i] / 1000000, agree[i], positions,
+                    (double) errors[i] / positions));
+    }
+}
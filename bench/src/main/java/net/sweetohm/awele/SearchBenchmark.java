@@ -0,0 +1,100 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Benchmarks of <code>IA.getMove()</code> at several levels. Each operation
+ * searches one position of a corpus of <code>POSITIONS</code> mid-game
+ * positions, in turn. The transposition table is kept from one position
+ * to the next, as in a game, and cleared once per pass over the corpus,
+ * so that no position is answered from entries of its previous search and
+ * clearing costs little per operation.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+
+    /**
+     * Number of positions searched between clearings of the table
+     */
+    private static final int POSITIONS = 16384;
+    /**
+     * Search depth in half plays
+     */
+    @Param({"2", "4", "6", "8", "10", "12"})
+    public int level;
+    /**
+     * Number of search threads
+     */
+    @Param({"1"})
+    public int threads;
+    /**
+     * Transposition table size in megabytes
+     */
+    @Param({"16"})
+    public int hash;
+    /**
+     * IA under test
+     */
+    private IA ia;
+    /**
+     * Positions searched and the side to move in each one
+     */
+    private final int[][] boards = new int[POSITIONS][];
+    private final int[] sides = new int[POSITIONS];
+    /**
+     * Index of the next position
+     */
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Corpus.generate(new Random(Corpus.SEED), boards, sides, new int[POSITIONS]);
+        ia = new IA();
+        ia.level = level;
+        ia.setHashSize(hash);
+        ia.setThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ia.setThreads(1);
+    }
+
+    @Benchmark
+    public int getMove() {
+        int i = index++ & (POSITIONS - 1);
+        if (i == 0)
+            ia.clearHash();
+        System.arraycopy(boards[i], 0, ia.board, 0, 14);
+        return (ia.getMove(sides[i]));
+    }
+}
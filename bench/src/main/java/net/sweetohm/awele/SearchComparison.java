@@ -0,0 +1,139 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.Random;
+
+/**
+ * Compare the plain alpha-beta search with the principal variation search
+ * (with aspiration windows and late move reductions) on a fixed set of
+ * positions, found by random openings from a fixed seed. Both searches
+ * run at the same depth to compare numbers of nodes, notes and moves
+ * (moves may differ for equal notes, as ties are broken randomly), then the
+ * principal variation search runs with the time the plain search took at
+ * this depth, to tell the depth it reaches.
+ * <p>
+ * Usage: <code>SearchComparison [level] [positions] [reduction] [aspiration]</code>,
+ * from the benchmark JAR file: <code>java -cp target/benchmarks.jar
+ * net.sweetohm.awele.SearchComparison</code>.
+ */
+final class SearchComparison {
+
+    /**
+     * Seed of openings
+     */
+    private static final long SEED = 2015L;
+
+    /**
+     * Run the comparison.
+     *
+     * @param args Level (default 12), number of positions (default 50),
+     *             late move reduction (default 2) and aspiration window
+     *             (default 100)
+     */
+    public static void main(String[] args) {
+        int level = (args.length > 0 ? Integer.parseInt(args[0]) : 12);
+        int count = (args.length > 1 ? Integer.parseInt(args[1]) : 50);
+        int reduction = (args.length > 2 ? Integer.parseInt(args[2]) : 2);
+        int aspiration = (args.length > 3 ? Integer.parseInt(args[3]) : 100);
+        Random random = new Random(SEED);
+        long plainNodes = 0;
+        long plainTime = 0;
+        long pvsNodes = 0;
+        long pvsTime = 0;
+        int agree = 0;
+        int sameNote = 0;
+        int depths = 0;
+        int positions = 0;
+        IA plain = new IA();
+        plain.pvs = false;
+        plain.aspirationWindow = 0;
+        IA pvs = new IA();
+        pvs.lateMoveReduction = reduction;
+        pvs.aspirationWindow = aspiration;
+        int[] board = new int[14];
+        while (positions < count) {
+            int side = opening(random, board);
+            if (side == 0)
+                continue;
+            positions++;
+            plain.level = level;
+            plain.clearHash();
+            System.arraycopy(board, 0, plain.board, 0, 14);
+            long start = System.nanoTime();
+            int plainMove = plain.getMove(side);
+            long time = System.nanoTime() - start;
+            plainTime += time;
+            plainNodes += plain.getNodes();
+            pvs.level = level;
+            pvs.setTimeLimits(0, 0);
+            pvs.clearHash();
+            System.arraycopy(board, 0, pvs.board, 0, 14);
+            start = System.nanoTime();
+            int pvsMove = pvs.getMove(side);
+            pvsTime += System.nanoTime() - start;
+            pvsNodes += pvs.getNodes();
+            if (plainMove == pvsMove)
+                agree++;
+            if (plain.getNote() == pvs.getNote())
+                sameNote++;
+            // depth reached in the time of the plain search
+            pvs.setTimeLimits(Math.max(1, time / 1000000), Math.max(1, time / 1000000));
+            pvs.clearHash();
+            System.arraycopy(board, 0, pvs.board, 0, 14);
+            pvs.getMove(side);
+            depths += pvs.getDepth();
+        }
+        System.out.println("positions: " + positions + ", level " + level);
+        System.out.println("plain: " + plainNodes + " nodes, " + plainTime / 1000000 + " ms");
+        System.out.println("pvs:   " + pvsNodes + " nodes, " + pvsTime / 1000000 + " ms");
+        System.out.println("same move: " + agree + "/" + positions
+                + ", same note: " + sameNote + "/" + positions);
+        System.out.println(String.format("pvs depth in plain time: %.1f",
+                (double) depths / positions));
+    }
+
+    /**
+     * Play a random opening.
+     *
+     * @param random The random generator
+     * @param board  The board to play the opening on
+     * @return The side to move or 0 if the game is over
+     */
+    static int opening(Random random, int[] board) {
+        IA ia = new IA();
+        ia.Init();
+        Board position = new Board();
+        position.set(ia.board);
+        int side = IA.SOUTH;
+        int plies = 4 + random.nextInt(30);
+        for (int ply = 0; ply < plies; ply++) {
+            int moves = position.legalMoves(side);
+            if (moves == 0)
+                return (0);
+            int n = random.nextInt(Integer.bitCount(moves));
+            for (int move = 0; move < 12; move++) {
+                if ((moves & (1 << move)) != 0 && n-- == 0) {
+                    position.make(move, side);
+                    break;
+                }
+            }
+            side = -side;
+        }
+        position.get(board);
+        return (position.legalMoves(side) == 0 ? 0 : side);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Evaluation of blocks of positions with the Vector API: each lane of a
+ * vector holds a position, so that the seven features are computed for as
+ * many positions as there are lanes (8 with AVX2) at once. Divisions are
+ * replaced by comparisons, as there are at most 48 seeds in a hole.
+ * <p>
+ * This class is compiled and run with <code>--add-modules
+ * jdk.incubator.vector</code>, and created by
+ * <code>BatchEvaluator.create()</code> only.
+ */
+final class VectorBatchEvaluator implements BatchEvaluator {
+
+    /**
+     * Preferred vector shape of the platform
+     */
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    /**
+     * DNA of the evaluation function
+     */
+    private final int[] dna;
+    /**
+     * Evaluator of positions left over by vector lanes
+     */
+    private final ScalarBatchEvaluator tail;
+
+    /**
+     * Constructor.
+     *
+     * @param dna The DNA, see <code>Eval.DNA</code>
+     */
+    VectorBatchEvaluator(int[] dna) {
+        this.dna = dna.clone();
+        this.tail = new ScalarBatchEvaluator(dna);
+    }
+
+    public void evaluate(EvalBatch batch) {
+        int[][] pits = batch.pits;
+        int bound = SPECIES.loopBound(batch.size);
+        IntVector zero = IntVector.zero(SPECIES);
+        IntVector one = IntVector.broadcast(SPECIES, 1);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            IntVector potential = zero;
+            IntVector mobility = zero;
+            IntVector tactic = zero;
+            IntVector lofts = zero;
+            IntVector dams = zero;
+            IntVector northThreats = zero;
+            IntVector southThreats = zero;
+            for (int side = 0; side < 2; side++) {
+                IntVector run = zero;
+                IntVector dam = zero;
+                IntVector sidePotential = zero;
+                IntVector sideMobility = zero;
+                IntVector sideTactic = zero;
+                IntVector sideLofts = zero;
+                IntVector threats = zero;
+                for (int h = 6 * side; h < 6 * side + 6; h++) {
+                    IntVector seeds = IntVector.fromArray(SPECIES, pits[h], i);
+                    sidePotential = sidePotential.add(seeds);
+                    sideMobility = sideMobility.add(one, seeds.compare(VectorOperators.NE, 0));
+                    if (h % 6 < 5)
+                        sideTactic = sideTactic.add(one, seeds.compare(VectorOperators.LT, 6 - h % 6));
+                    // target hole (h + seeds % 11) % 12, without division
+                    IntVector target = seeds.add(h)
+                            .sub(11, seeds.compare(VectorOperators.GE, 11))
+                            .sub(11, seeds.compare(VectorOperators.GE, 22))
+                            .sub(11, seeds.compare(VectorOperators.GE, 33))
+                            .sub(11, seeds.compare(VectorOperators.GE, 44));
+                    target = target.sub(12, target.compare(VectorOperators.GE, 12));
+                    threats = threats.or(one.lanewise(VectorOperators.LSHL, target));
+                    VectorMask<Integer> other = (side == 0 ?
+                            target.compare(VectorOperators.GE, 6) : target.compare(VectorOperators.LT, 6));
+                    VectorMask<Integer> loft = seeds.compare(VectorOperators.GT, 11)
+                            .and(seeds.compare(VectorOperators.LT, 34)).and(other);
+                    sideLofts = sideLofts.add(one, loft);
+                    run = run.add(1).blend(zero, seeds.compare(VectorOperators.GE, 3));
+                    dam = dam.max(run);
+                }
+                if (side == 0) {
+                    potential = sidePotential;
+                    mobility = sideMobility;
+                    tactic = sideTactic;
+                    lofts = sideLofts;
+                    dams = dam.neg();
+                    northThreats = threats;
+                } else {
+                    potential = potential.sub(sidePotential);
+                    mobility = mobility.sub(sideMobility);
+                    tactic = tactic.sub(sideTactic);
+                    lofts = lofts.sub(sideLofts);
+                    dams = dams.add(dam);
+                    southThreats = threats;
+                }
+            }
+            IntVector threats = bitCount(northThreats.and(0xFC0)).sub(bitCount(southThreats.and(0x3F)));
+            IntVector advance = IntVector.fromArray(SPECIES, pits[12], i)
+                    .sub(IntVector.fromArray(SPECIES, pits[13], i));
+            IntVector note = advance.mul(dna[0])
+                    .add(potential.mul(dna[1]))
+                    .add(mobility.mul(dna[2]))
+                    .add(tactic.mul(dna[3]))
+                    .add(threats.mul(dna[4]))
+                    .add(lofts.mul(dna[5]))
+                    .add(dams.mul(dna[6]));
+            // sides are 1 for north and -1 for south
+            note.mul(IntVector.fromArray(SPECIES, batch.sides, i)).intoArray(batch.notes, i);
+        }
+        tail.evaluate(batch, bound, batch.size);
+    }
+
+    /**
+     * Count the bits set in each lane of values below 2^12.
+     */
+    private static IntVector bitCount(IntVector x) {
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x555));
+        x = x.and(0x333).add(x.lanewise(VectorOperators.LSHR, 2).and(0x333));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F);
+        return (x.add(x.lanewise(VectorOperators.LSHR, 8)).and(0x1F));
+    }
+}
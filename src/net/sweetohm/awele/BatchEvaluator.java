@@ -0,0 +1,53 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Evaluation of blocks of positions, giving the same notes as
+ * <code>Eval.evaluate()</code>. The implementation using the Vector API
+ * (<code>VectorBatchEvaluator</code>, in <code>src-vector</code>) is used
+ * when it was compiled and the JVM runs with
+ * <code>--add-modules jdk.incubator.vector</code>; otherwise a scalar
+ * implementation is used.
+ */
+interface BatchEvaluator {
+
+    /**
+     * Evaluate all positions of a block.
+     *
+     * @param batch The block, whose notes are set
+     */
+    void evaluate(EvalBatch batch);
+
+    /**
+     * Create the fastest evaluator available.
+     *
+     * @param dna The DNA of the evaluation function, see <code>Eval.DNA</code>
+     * @return The evaluator
+     */
+    static BatchEvaluator create(int[] dna) {
+        int[] checked = new Eval(dna).getDna();
+        try {
+            Class<?> vector = Class.forName("net.sweetohm.awele.VectorBatchEvaluator");
+            return ((BatchEvaluator) vector.getDeclaredConstructor(int[].class).newInstance(checked));
+        } catch (Exception e) {
+            return (new ScalarBatchEvaluator(checked));
+        } catch (LinkageError e) {
+            // the incubator module is not in the module graph
+            return (new ScalarBatchEvaluator(checked));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Board for the search. Moves are played in place and recorded on an undo
+ * stack allocated once, so that playing and undoing moves doesn't allocate
+ * any object. The hash of the board and the features of the evaluation
+ * function are updated incrementally.
+ * <p>
+ * An undo record is packed in an <code>int</code>: the move (4 bits), the
+ * number of seeds in the hole (6 bits), the last hole sown (4 bits), the
+ * number of captured holes (3 bits) and one bit per captured hole telling
+ * if it held 3 seeds rather than 2 (6 bits).
+ * <p>
+ * Sowing is driven by tables computed once for each hole and number of
+ * seeds: the holes that get seeds with their number of seeds, the last
+ * hole sown and how many holes may be captured from it, so that a move
+ * needs no division and no bound check.
+ */
+final class Board {
+
+    /**
+     * Maximum number of moves on the undo stack
+     */
+    public static final int MAX_PLY = 128;
+    /**
+     * Number of seed counts of a hole in tables, from 0 to 48
+     */
+    private static final int SEEDS = 49;
+    /**
+     * Sowing steps of all moves, each packing the hole (4 bits) and the
+     * number of seeds added (6 bits), in sowing order
+     */
+    private static final int[] SOW_STEPS;
+    /**
+     * Index of the first step of a move in <code>SOW_STEPS</code>, per
+     * <code>hole * SEEDS + seeds</code>, the steps ending at the first
+     * step of the next index
+     */
+    private static final int[] SOW_FIRST = new int[12 * SEEDS + 1];
+    /**
+     * Last hole sown, per <code>hole * SEEDS + seeds</code>
+     */
+    private static final int[] SOW_LAST = new int[12 * SEEDS];
+    /**
+     * Maximum number of holes captured: the holes of the other side from
+     * the last hole sown back to the first one, 0 if the last hole sown is
+     * on the side playing
+     */
+    private static final int[] CAPTURE_LIMIT = new int[12 * SEEDS];
+    /**
+     * Holes (0 to 11) and stores (12 for north and 13 for south)
+     */
+    public final int[] pits = new int[14];
+    /**
+     * Hash of the board (without side to move)
+     */
+    public long hash;
+    /**
+     * Features of the evaluation function
+     */
+    public final Features features = new Features();
+    /**
+     * Undo records
+     */
+    private final int[] undo = new int[MAX_PLY];
+    /**
+     * Hashes before each move
+     */
+    private final long[] undoHash = new long[MAX_PLY];
+    /**
+     * Number of moves on the undo stack
+     */
+    private int ply;
+
+    static {
+        int[] steps = new int[12 * SEEDS * 11];
+        int n = 0;
+        for (int move = 0; move < 12; move++) {
+            for (int seeds = 0; seeds < SEEDS; seeds++) {
+                int index = move * SEEDS + seeds;
+                SOW_FIRST[index] = n;
+                for (int i = 1; i < 12; i++) {
+                    int added = seeds / 11 + (i > seeds % 11 ? 0 : 1);
+                    if (added > 0)
+                        steps[n++] = (move + i) % 12 | (added << 4);
+                }
+                int last = (move + seeds % 11) % 12;
+                int opposite = (move < 6 ? 6 : 0);
+                SOW_LAST[index] = last;
+                CAPTURE_LIMIT[index] = (seeds > 0 && last >= opposite && last < opposite + 6 ?
+                        last - opposite + 1 : 0);
+            }
+        }
+        SOW_FIRST[12 * SEEDS] = n;
+        SOW_STEPS = java.util.Arrays.copyOf(steps, n);
+    }
+
+    /**
+     * Load a board. The undo stack is emptied.
+     *
+     * @param board The board as an <code>int[]</code>
+     */
+    public void set(int[] board) {
+        System.arraycopy(board, 0, pits, 0, pits.length);
+        hash = Zobrist.hash(pits);
+        features.set(pits);
+        ply = 0;
+    }
+
+    /**
+     * Load a packed board. The undo stack is emptied.
+     *
+     * @param board The packed board
+     */
+    public void set(PackedBoard board) {
+        board.unpack(pits);
+        hash = Zobrist.hash(pits);
+        features.set(pits);
+        ply = 0;
+    }
+
+    /**
+     * @return This board packed
+     */
+    public PackedBoard pack() {
+        return (PackedBoard.pack(pits));
+    }
+
+    /**
+     * Copy this board.
+     *
+     * @param board The <code>int[]</code> to copy the board into
+     */
+    public void get(int[] board) {
+        System.arraycopy(pits, 0, board, 0, pits.length);
+    }
+
+    /**
+     * Compute the key for the transposition table.
+     *
+     * @param side The side to move
+     * @return The key as a <code>long</code>
+     */
+    public long key(int side) {
+        return (hash ^ (side == IA.SOUTH ? Zobrist.SOUTH_TO_MOVE : 0));
+    }
+
+    /**
+     * @return The number of moves on the undo stack
+     */
+    public int ply() {
+        return (ply);
+    }
+
+    /**
+     * Play a move. If the move is illegal, the board is left unchanged.
+     *
+     * @param move The move to play
+     * @param side The side to play
+     * @return A <code>boolean</code> that tells if the move is legal
+     */
+    public boolean make(int move, int side) {
+        int first = (side == IA.NORTH ? 0 : 6);
+        if (move < first || move >= first + 6 || pits[move] == 0)
+            return (false);
+        int seeds = pits[move];
+        int index = move * SEEDS + seeds;
+        long h = hash;
+        // move the seeds on the board
+        for (int n = SOW_FIRST[index], end = SOW_FIRST[index + 1]; n < end; n++) {
+            int step = SOW_STEPS[n];
+            int hole = step & 0xF;
+            int added = step >>> 4;
+            int before = pits[hole];
+            pits[hole] = before + added;
+            h ^= Zobrist.KEYS[hole][before] ^ Zobrist.KEYS[hole][before + added];
+            features.update(hole, before, before + added);
+        }
+        h ^= Zobrist.KEYS[move][seeds] ^ Zobrist.KEYS[move][0];
+        features.update(move, seeds, 0);
+        pits[move] = 0;
+        // capture seeds in the opposite side while there are 2 or 3 seeds
+        int last = SOW_LAST[index];
+        int limit = CAPTURE_LIMIT[index];
+        int store = (side == IA.NORTH ? 12 : 13);
+        int count = 0;
+        int threes = 0;
+        int hole = last;
+        while (count < limit && pits[hole] > 1 && pits[hole] < 4) {
+            threes |= (pits[hole] - 2) << count;
+            h ^= Zobrist.KEYS[store][pits[store]] ^ Zobrist.KEYS[hole][pits[hole]];
+            features.advance += (store == 12 ? pits[hole] : -pits[hole]);
+            features.update(hole, pits[hole], 0);
+            pits[store] += pits[hole];
+            pits[hole] = 0;
+            h ^= Zobrist.KEYS[store][pits[store]] ^ Zobrist.KEYS[hole][0];
+            count++;
+            hole--;
+        }
+        undo[ply] = move | (seeds << 4) | (last << 10) | (count << 14) | (threes << 17);
+        undoHash[ply] = hash;
+        ply++;
+        hash = h;
+        // the opposite side must have seeds left
+        int opposite = 6 - first;
+        int seedsCountOppositeSide = 0;
+        for (int i = opposite; i < opposite + 6; i++)
+            seedsCountOppositeSide += pits[i];
+        if (seedsCountOppositeSide == 0) {
+            unmake();
+            return (false);
+        }
+        return (true);
+    }
+
+    /**
+     * Undo the last move played.
+     */
+    public void unmake() {
+        ply--;
+        int record = undo[ply];
+        hash = undoHash[ply];
+        int move = record & 0xF;
+        int seeds = (record >>> 4) & 0x3F;
+        int last = (record >>> 10) & 0xF;
+        int count = (record >>> 14) & 0x7;
+        int threes = record >>> 17;
+        int store = (move < 6 ? 12 : 13);
+        for (int i = 0; i < count; i++) {
+            int captured = 2 + ((threes >>> i) & 1);
+            features.update(last - i, 0, captured);
+            features.advance -= (store == 12 ? captured : -captured);
+            pits[last - i] = captured;
+            pits[store] -= captured;
+        }
+        int index = move * SEEDS + seeds;
+        for (int n = SOW_FIRST[index], end = SOW_FIRST[index + 1]; n < end; n++) {
+            int step = SOW_STEPS[n];
+            int hole = step & 0xF;
+            int added = step >>> 4;
+            features.update(hole, pits[hole], pits[hole] - added);
+            pits[hole] -= added;
+        }
+        features.update(move, 0, seeds);
+        pits[move] = seeds;
+    }
+
+    /**
+     * Compute legal moves of a side.
+     *
+     * @param side The side to play
+     * @return A bitmask with bit <i>n</i> set if hole <i>n</i> is a legal move
+     */
+    public int legalMoves(int side) {
+        int mask = 0;
+        int first = (side == IA.NORTH ? 0 : 6);
+        for (int move = first; move < first + 6; move++) {
+            if (make(move, side)) {
+                unmake();
+                mask |= 1 << move;
+            }
+        }
+        return (mask);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Analysis of a stream of positions. Positions are read from a file, one
+ * per line, as the arguments of the <code>position</code> command of
+ * <code>Protocol</code>, for instance <code>start moves 7 2</code> or
+ * <code>pits 4 4 4 4 4 4 4 4 4 4 4 4 0 0 side north</code>. Empty lines
+ * and lines starting with <code>#</code> are skipped.
+ * <p>
+ * Each position is written on a line of the output file, in the order of
+ * the input: its line number in the input, the best move (or
+ * <code>none</code>), the note for the side to play, the depth and the
+ * number of nodes, or its line number followed by <code>error</code> and
+ * a message if the line is not a valid position.
+ * <p>
+ * Positions are searched in parallel by a <code>SearchEngine</code>, whose
+ * contexts are reused from one position to the next. At most
+ * <code>window</code> positions are read ahead of the last one written:
+ * reading waits for the output, so that memory is bounded whatever the
+ * size of the input. If the output file exists, the analysis resumes
+ * after the last complete line, so that a crashed run may be started
+ * again with the same arguments.
+ * <p>
+ * Usage: <code>BulkAnalysis input output [options]</code>, input being
+ * <code>-</code> for the standard input, with options <code>-threads
+ * n</code> (default all cores), <code>-level n</code> (default 8),
+ * <code>-time ms</code> (soft limit per position, hard limit is twice),
+ * <code>-hash megabytes</code> (per thread), <code>-window n</code>
+ * (default 1024) and <code>-report seconds</code> (progress period on the
+ * standard error, default 10).
+ */
+final class BulkAnalysis {
+
+    /**
+     * End of the stream of results
+     */
+    private static final Future<String> END = new FutureTask<String>(new Callable<String>() {
+        public String call() {
+            return (null);
+        }
+    });
+    /**
+     * The engine
+     */
+    private final SearchEngine engine;
+    /**
+     * Threads searching positions
+     */
+    private final ExecutorService workers;
+    /**
+     * Results not written yet, in input order
+     */
+    private final BlockingQueue<Future<String>> pending;
+    /**
+     * Period of progress reports in nanoseconds
+     */
+    private final long report;
+
+    /**
+     * Constructor.
+     *
+     * @param engine  The engine
+     * @param threads Number of search threads
+     * @param window  Maximum number of positions read and not written
+     * @param report  Period of progress reports in seconds
+     */
+    BulkAnalysis(SearchEngine engine, int threads, int window, int report) {
+        this.engine = engine;
+        this.pending = new ArrayBlockingQueue<Future<String>>(window);
+        this.report = report * 1000000000L;
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "awele-analysis");
+                thread.setDaemon(true);
+                return (thread);
+            }
+        });
+    }
+
+    /**
+     * Analyze positions.
+     *
+     * @param input  The positions
+     * @param output The output file, resumed if it exists
+     * @return The number of positions analyzed
+     * @throws Exception If an I/O error occurs
+     */
+    long run(final InputStream input, File output) throws Exception {
+        final long done = resume(output);
+        final Exception[] failure = new Exception[1];
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    read(input, done);
+                } catch (Exception e) {
+                    failure[0] = e;
+                } finally {
+                    try {
+                        pending.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "awele-reader");
+        reader.setDaemon(true);
+        reader.start();
+        long count = 0;
+        long nodes = 0;
+        long start = System.nanoTime();
+        long next = start + report;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(output, true), StandardCharsets.UTF_8));
+        try {
+            for (Future<String> result = pending.take(); result != END; result = pending.take()) {
+                String line = result.get();
+                writer.write(line);
+                writer.write('\n');
+                count++;
+                nodes += nodes(line);
+                long now = System.nanoTime();
+                if (now >= next) {
+                    writer.flush();
+                    progress(count, nodes, now - start);
+                    next = now + report;
+                }
+            }
+        } finally {
+            writer.close();
+            workers.shutdownNow();
+        }
+        if (failure[0] != null)
+            throw failure[0];
+        progress(count, nodes, System.nanoTime() - start);
+        return (count);
+    }
+
+    /**
+     * Read positions and submit them, waiting when <code>window</code>
+     * results are not written.
+     *
+     * @param input The positions
+     * @param done  Number of the last input line already analyzed
+     */
+    private void read(InputStream input, long done) throws IOException, InterruptedException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        long number = 0;
+        while ((line = in.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (number <= done || line.length() == 0 || line.startsWith("#"))
+                continue;
+            final long n = number;
+            final String position = line;
+            pending.put(workers.submit(new Callable<String>() {
+                public String call() {
+                    return (analyze(n, position));
+                }
+            }));
+        }
+    }
+
+    /**
+     * Analyze a position.
+     *
+     * @param number   The input line number
+     * @param position The position, see above
+     * @return The output line
+     */
+    private String analyze(long number, String position) {
+        int[] board = new int[14];
+        int side;
+        try {
+            side = Protocol.position(("position " + position).split("\\s+"), board);
+        } catch (IllegalArgumentException e) {
+            return (number + " error " + e.getMessage());
+        }
+        SearchResult result = engine.analyze(board, side);
+        return (number + " " + (result.move == IA.NULL ? "none" : String.valueOf(result.move))
+                + " " + result.note + " " + result.depth + " " + result.nodes);
+    }
+
+    /**
+     * Prepare an output file for resuming: remove an incomplete last line,
+     * written by a run that crashed, and give the input line number of the
+     * last complete one.
+     *
+     * @param output The output file
+     * @return The number of the last input line analyzed, 0 if none
+     */
+    static long resume(File output) throws IOException {
+        if (!output.exists())
+            return (0);
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            long end = file.length();
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n')
+                    break;
+                end--;
+            }
+            file.setLength(end);
+            if (end == 0)
+                return (0);
+            long start = end - 1;
+            while (start > 0) {
+                file.seek(start - 1);
+                if (file.read() == '\n')
+                    break;
+                start--;
+            }
+            file.seek(start);
+            String last = file.readLine();
+            return (Long.parseLong(last.substring(0, last.indexOf(' '))));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Number of nodes of an output line, 0 for an error line.
+     */
+    private static long nodes(String line) {
+        String[] words = line.split(" ");
+        if (words.length != 5 || words[1].equals("error"))
+            return (0);
+        return (Long.parseLong(words[4]));
+    }
+
+    /**
+     * Report progress on the standard error.
+     */
+    private static void progress(long count, long nodes, long nanos) {
+        double seconds = Math.max(1e-9, nanos / 1e9);
+        System.err.println(String.format("%d positions in %.1f s, %.1f positions/s, %.0f nodes/s",
+                count, seconds, count / seconds, nodes / seconds));
+    }
+
+    /**
+     * Run an analysis.
+     *
+     * @param args Input and output files and options, see above
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BulkAnalysis input output [options]");
+            System.exit(1);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        int level = 8;
+        long time = 0;
+        int hash = IA.DEFAULT_HASH_SIZE;
+        int window = 1024;
+        int report = 10;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt(value);
+            else if (args[i].equals("-level"))
+                level = Integer.parseInt(value);
+            else if (args[i].equals("-time"))
+                time = Long.parseLong(value);
+            else if (args[i].equals("-hash"))
+                hash = Integer.parseInt(value);
+            else if (args[i].equals("-window"))
+                window = Integer.parseInt(value);
+            else if (args[i].equals("-report"))
+                report = Integer.parseInt(value);
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+        SearchEngine engine = new SearchEngine(hash);
+        engine.level = level;
+        engine.softTimeLimit = time;
+        engine.hardTimeLimit = 2 * time;
+        InputStream input = (args[0].equals("-") ? System.in : new FileInputStream(args[0]));
+        try {
+            new BulkAnalysis(engine, threads, window, report).run(input, new File(args[1]));
+        } finally {
+            input.close();
+        }
+    }
+}
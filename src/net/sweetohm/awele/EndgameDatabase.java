@@ -0,0 +1,451 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Endgame database. For every position with up to a given number of seeds
+ * in the holes, it gives the difference of seeds the side to move will
+ * capture from now on, with perfect play of both sides. A game that never
+ * ends captures nothing more.
+ * <p>
+ * There is one file per number of seeds <i>n</i>, named
+ * <code>awele-n.db</code>. It holds a 16 bytes header (magic, number of
+ * seeds and number of positions) followed by one byte per position. The
+ * side to move is always considered as north (the board is rotated for
+ * south), and positions are indexed by their rank among all the ways to
+ * put <i>n</i> seeds in 12 holes. Files are memory mapped, so that all the
+ * engines of a host share the same pages.
+ * <p>
+ * Levels are generated by retrograde analysis, from 1 seed up. A capture
+ * leads to a level already solved. Within a level, positions worth at least
+ * <i>t</i> (or at most <i>-t</i>) are found for <i>t</i> from <i>n</i> down
+ * to 1. Remaining positions are worth 0. Each level is written when it is
+ * complete, so that a generation that is interrupted resumes at the first
+ * missing level. Generating 20 seeds needs about 3 GB of heap.
+ */
+final class EndgameDatabase {
+
+    /**
+     * Value returned by probe for positions not in the database
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    /**
+     * Maximum number of seeds supported
+     */
+    public static final int MAX_SEEDS = 20;
+    /**
+     * File magic number ("AWDB")
+     */
+    private static final int MAGIC = 0x41574442;
+    /**
+     * Header size in bytes
+     */
+    private static final int HEADER = 16;
+    /**
+     * Best exit value for a position without legal move
+     */
+    private static final byte NO_MOVE = -128;
+    /**
+     * Best exit value for a position whose moves don't capture
+     */
+    private static final byte NO_EXIT = -127;
+    /**
+     * COUNT[k][m] is the number of ways to put m seeds in k holes
+     */
+    private static final long[][] COUNT = new long[13][MAX_SEEDS + 1];
+    /**
+     * Mapped files, per number of seeds
+     */
+    private final MappedByteBuffer[] levels;
+    /**
+     * Maximum number of seeds in the database
+     */
+    private final int maxSeeds;
+
+    static {
+        for (int m = 0; m <= MAX_SEEDS; m++)
+            COUNT[1][m] = 1;
+        for (int k = 2; k <= 12; k++)
+            for (int m = 0; m <= MAX_SEEDS; m++)
+                for (int v = 0; v <= m; v++)
+                    COUNT[k][m] += COUNT[k - 1][m - v];
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param levels Mapped files
+     */
+    private EndgameDatabase(MappedByteBuffer[] levels) {
+        this.levels = levels;
+        this.maxSeeds = levels.length - 1;
+    }
+
+    /**
+     * Open a database. Levels are loaded from 1 seed up to the first
+     * missing file.
+     *
+     * @param directory Directory of database files
+     * @param maxSeeds  Maximum number of seeds to load
+     * @return The database
+     * @throws IOException If a file can't be read or is not valid
+     */
+    public static EndgameDatabase open(File directory, int maxSeeds) throws IOException {
+        List<MappedByteBuffer> levels = new ArrayList<MappedByteBuffer>();
+        levels.add(null);
+        for (int n = 1; n <= Math.min(maxSeeds, MAX_SEEDS); n++) {
+            File file = file(directory, n);
+            if (!file.exists())
+                break;
+            levels.add(map(file, n));
+        }
+        return (new EndgameDatabase(levels.toArray(new MappedByteBuffer[0])));
+    }
+
+    /**
+     * @return The maximum number of seeds of positions in the database
+     */
+    public int getMaxSeeds() {
+        return (maxSeeds);
+    }
+
+    /**
+     * Look for a position in the database.
+     *
+     * @param board The board as an <code>int[]</code>
+     * @param side  The side to move
+     * @return The difference of seeds the side to move will capture or
+     * <code>UNKNOWN</code>
+     */
+    public int probe(int[] board, int side) {
+        int seeds = 0;
+        for (int i = 0; i < 12; i++)
+            seeds += board[i];
+        if (seeds > maxSeeds)
+            return (UNKNOWN);
+        if (seeds == 0)
+            return (0);
+        return (levels[seeds].get(HEADER + rank(board, side == IA.NORTH ? 0 : 6, seeds)));
+    }
+
+    /**
+     * @param directory The database directory
+     * @param seeds     The number of seeds
+     * @return The file for a given number of seeds
+     */
+    private static File file(File directory, int seeds) {
+        return (new File(directory, "awele-" + seeds + ".db"));
+    }
+
+    /**
+     * Map a database file and check its header.
+     */
+    private static MappedByteBuffer map(File file, int seeds) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != seeds
+                    || buffer.getLong(8) != COUNT[12][seeds]
+                    || channel.size() != HEADER + COUNT[12][seeds])
+                throw new IOException("Invalid endgame database file " + file);
+            return (buffer);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Generate missing levels of a database.
+     *
+     * @param directory The database directory
+     * @param maxSeeds  The maximum number of seeds
+     * @param threads   The number of threads
+     * @throws Exception If a file can't be written
+     */
+    public static void generate(File directory, int maxSeeds, int threads) throws Exception {
+        if (maxSeeds > MAX_SEEDS)
+            throw new IllegalArgumentException("At most " + MAX_SEEDS + " seeds are supported");
+        directory.mkdirs();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int n = 1; n <= maxSeeds; n++) {
+                if (file(directory, n).exists())
+                    continue;
+                long start = System.currentTimeMillis();
+                EndgameDatabase lower = open(directory, n - 1);
+                if (lower.maxSeeds != n - 1)
+                    throw new IOException("Missing level " + (lower.maxSeeds + 1));
+                byte[] values = new Level(lower, n).solve(executor, threads);
+                write(directory, n, values);
+                System.out.println(n + " seeds: " + values.length + " positions in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Write a level, through a temporary file, so that a complete file is
+     * always valid.
+     */
+    private static void write(File directory, int seeds, byte[] values) throws IOException {
+        File temporary = new File(directory, "awele-" + seeds + ".tmp");
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(seeds).putLong(values.length).flip();
+        FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            channel.write(header);
+            ByteBuffer body = ByteBuffer.wrap(values);
+            while (body.hasRemaining())
+                channel.write(body);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        Files.move(temporary.toPath(), file(directory, seeds).toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A level being solved. Moves that don't capture stay in the level, so
+     * the predecessors of each position in the level are listed first, in
+     * parallel. Then, for each threshold, positions are decided from those
+     * that are already known, going backwards from position to
+     * predecessors.
+     */
+    private static final class Level {
+
+        /**
+         * Database of lower levels
+         */
+        private final EndgameDatabase lower;
+        /**
+         * Number of seeds
+         */
+        private final int seeds;
+        /**
+         * Values of positions, 0 while unknown
+         */
+        private final byte[] values;
+        /**
+         * Best value of moves that capture, or NO_EXIT or NO_MOVE
+         */
+        private final byte[] exits;
+        /**
+         * Number of moves that don't capture and are not known to lead to a
+         * position worth at least the current threshold
+         */
+        private final byte[] counts;
+        /**
+         * Number of predecessors, then index of the next one to list
+         */
+        private final AtomicIntegerArray cursors;
+        /**
+         * Index of the first predecessor of each position
+         */
+        private final int[] offsets;
+        /**
+         * Predecessors of positions
+         */
+        private int[] predecessors;
+
+        Level(EndgameDatabase lower, int seeds) {
+            this.lower = lower;
+            this.seeds = seeds;
+            int size = (int) COUNT[12][seeds];
+            values = new byte[size];
+            exits = new byte[size];
+            counts = new byte[size];
+            cursors = new AtomicIntegerArray(size);
+            offsets = new int[size + 1];
+        }
+
+        /**
+         * Solve the level.
+         *
+         * @return Values of positions
+         */
+        byte[] solve(ExecutorService executor, int threads) throws Exception {
+            run(executor, threads, false);
+            for (int i = 0; i < values.length; i++) {
+                offsets[i + 1] = offsets[i] + cursors.get(i);
+                cursors.set(i, offsets[i]);
+            }
+            predecessors = new int[offsets[values.length]];
+            run(executor, threads, true);
+            int[] queue = new int[values.length];
+            for (int threshold = seeds; threshold > 0; threshold--) {
+                int tail = 0;
+                for (int index = 0; index < values.length; index++) {
+                    if (values[index] != 0 || exits[index] == NO_MOVE)
+                        continue;
+                    if (exits[index] >= threshold)
+                        values[index] = (byte) threshold;
+                    else if (exits[index] <= -threshold && counts[index] == 0)
+                        values[index] = (byte) -threshold;
+                    else
+                        continue;
+                    queue[tail++] = index;
+                }
+                for (int head = 0; head < tail; head++) {
+                    int index = queue[head];
+                    boolean lost = values[index] < 0;
+                    for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+                        int previous = predecessors[i];
+                        if (values[previous] != 0)
+                            continue;
+                        if (lost)
+                            values[previous] = (byte) threshold;
+                        else if (--counts[previous] == 0 && exits[previous] <= -threshold)
+                            values[previous] = (byte) -threshold;
+                        else
+                            continue;
+                        queue[tail++] = previous;
+                    }
+                }
+            }
+            return (values);
+        }
+
+        /**
+         * Run a pass on all positions in parallel.
+         *
+         * @param list Tells if predecessors are listed, else they are counted
+         */
+        private void run(ExecutorService executor, int threads, final boolean list)
+                throws Exception {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            int chunk = (values.length + threads - 1) / threads;
+            for (int start = 0; start < values.length; start += chunk) {
+                final int from = start;
+                final int to = Math.min(values.length, start + chunk);
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        pass(from, to, list);
+                        return (null);
+                    }
+                }));
+            }
+            for (Future<Object> future : futures)
+                future.get();
+        }
+
+        /**
+         * Run a pass on a range of positions. When counting, this also
+         * computes the best value of moves that capture.
+         */
+        private void pass(int from, int to, boolean list) {
+            Board board = new Board();
+            int[] pits = new int[14];
+            for (int index = from; index < to; index++) {
+                unrank(index, pits);
+                board.set(pits);
+                int exit = NO_MOVE;
+                for (int move = 0; move < 6; move++) {
+                    if (!board.make(move, IA.NORTH))
+                        continue;
+                    int captured = board.pits[12];
+                    if (captured > 0) {
+                        exit = Math.max(exit, captured - lower.probe(board.pits, IA.SOUTH));
+                    } else {
+                        exit = Math.max(exit, NO_EXIT);
+                        int next = rank(board.pits, 6, seeds);
+                        if (list)
+                            predecessors[cursors.getAndIncrement(next)] = index;
+                        else {
+                            cursors.incrementAndGet(next);
+                            counts[index]++;
+                        }
+                    }
+                    board.unmake();
+                }
+                exits[index] = (byte) exit;
+            }
+        }
+
+        /**
+         * Compute the board of a given rank, with north to move.
+         */
+        private void unrank(long rank, int[] pits) {
+            int remaining = seeds;
+            for (int i = 0; i < 11; i++) {
+                int v = 0;
+                while (rank >= COUNT[11 - i][remaining - v]) {
+                    rank -= COUNT[11 - i][remaining - v];
+                    v++;
+                }
+                pits[i] = v;
+                remaining -= v;
+            }
+            pits[11] = remaining;
+            pits[12] = 0;
+            pits[13] = 0;
+        }
+    }
+
+    /**
+     * Compute the rank of a board.
+     *
+     * @param pits  The board
+     * @param first First hole of the side to move
+     * @param seeds Number of seeds in holes
+     * @return The rank
+     */
+    private static int rank(int[] pits, int first, int seeds) {
+        long rank = 0;
+        int remaining = seeds;
+        for (int i = 0; i < 11; i++) {
+            int holes = pits[(first + i) % 12];
+            for (int v = 0; v < holes; v++)
+                rank += COUNT[11 - i][remaining - v];
+            remaining -= holes;
+        }
+        return ((int) rank);
+    }
+
+    /**
+     * Generate a database.
+     *
+     * @param args Directory, maximum number of seeds and number of threads
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: EndgameDatabase directory seeds [threads]");
+            System.exit(1);
+        }
+        int threads = (args.length > 2 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors());
+        generate(new File(args[0]), Integer.parseInt(args[1]), threads);
+    }
+}
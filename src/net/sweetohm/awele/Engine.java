@@ -0,0 +1,57 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * A reentrant engine: it holds no game, so that one engine serves any
+ * number of games from any number of threads. Implemented by the
+ * alpha-beta <code>SearchEngine</code> and the Monte-Carlo tree search
+ * <code>MctsEngine</code>, so that tools play and compare them on the same
+ * games.
+ */
+interface Engine {
+
+    /**
+     * Look for the best move with the limits of the engine.
+     *
+     * @param board The board, not modified
+     * @param side  The side to play
+     * @return The best move or <code>IA.NULL</code> if there is no legal move
+     */
+    int getMove(int[] board, int side);
+
+    /**
+     * Look for the best move with given time limits, for instance from the
+     * clock of a game.
+     *
+     * @param board The board, not modified
+     * @param side  The side to play
+     * @param soft  Soft time limit in milliseconds, 0 to use the fixed
+     *              effort of the engine (depth or playouts)
+     * @param hard  Hard time limit in milliseconds or 0 for none
+     * @return The best move or <code>IA.NULL</code> if there is no legal move
+     */
+    int getMove(int[] board, int side, long soft, long hard);
+
+    /**
+     * Get the CPU time used by helper threads of the engine for the
+     * searches run from the calling thread, so that the CPU time of a move
+     * is this plus the CPU time of the calling thread.
+     *
+     * @return CPU time in nanoseconds since the first search of the thread
+     */
+    long getHelperCpuTime();
+}
@@ -0,0 +1,318 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Cumulative metrics of engines: number of moves by origin, nodes,
+ * evaluations, depth, cutoffs and latency percentiles. An IA records its
+ * moves in metrics given to <code>IA.setMetrics()</code>; several IA may
+ * share the same metrics. Metrics are exposed as a JMX MBean and in the
+ * Prometheus text format (see <code>MetricsServer</code>).
+ * <p>
+ * Without metrics, an IA only keeps the counters of its last search, in
+ * plain fields of each search thread, so that instrumentation costs
+ * nothing.
+ */
+final class EngineMetrics implements EngineMetricsMBean {
+
+    /**
+     * Origins of moves
+     */
+    public static final int SEARCH = 0;
+    public static final int BOOK = 1;
+    public static final int PONDER = 2;
+    public static final int FORCED = 3;
+    /**
+     * JMX domain
+     */
+    private static final String DOMAIN = "net.sweetohm.awele";
+    /**
+     * Names and helps of the Prometheus counters of searches
+     */
+    private static final String[][] COUNTERS = {
+            {"awele_nodes_total", "Nodes searched."},
+            {"awele_evaluations_total", "Calls to the evaluation function."},
+            {"awele_depth_total", "Sum of the depths reached by searches."},
+            {"awele_cutoffs_total", "Beta cutoffs."},
+            {"awele_first_move_cutoffs_total", "Beta cutoffs caused by the first move."}};
+    /**
+     * Name of the engine, used in JMX and Prometheus labels
+     */
+    private final String name;
+    /**
+     * Number of moves per origin
+     */
+    private final AtomicLong[] moves = {new AtomicLong(), new AtomicLong(),
+            new AtomicLong(), new AtomicLong()};
+    /**
+     * Counters of searches
+     */
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong depths = new AtomicLong();
+    private final AtomicLong cutoffs = new AtomicLong();
+    private final AtomicLong firstMoveCutoffs = new AtomicLong();
+    /**
+     * Time spent searching in nanoseconds
+     */
+    private final AtomicLong searchTime = new AtomicLong();
+    /**
+     * Time to return a move, whatever its origin
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+    /**
+     * Name registered in the MBean server or null
+     */
+    private ObjectName objectName;
+
+    /**
+     * Constructor.
+     *
+     * @param name The name of the engine
+     */
+    public EngineMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The name of the engine
+     */
+    public String getName() {
+        return (name);
+    }
+
+    /**
+     * Record a move.
+     *
+     * @param origin      The origin of the move: <code>SEARCH</code>,
+     *                    <code>BOOK</code>, <code>PONDER</code> or <code>FORCED</code>
+     * @param nanos       The time to return the move in nanoseconds
+     * @param nodes       The number of nodes searched
+     * @param evaluations The number of calls to the evaluation function
+     * @param depth       The depth of the last completed iteration
+     * @param cutoffs     The number of beta cutoffs
+     * @param firstMove   The number of beta cutoffs caused by the first move
+     */
+    public void record(int origin, long nanos, long nodes, long evaluations, int depth,
+                       long cutoffs, long firstMove) {
+        moves[origin].incrementAndGet();
+        latency.record(nanos);
+        if (origin != SEARCH)
+            return;
+        searchTime.addAndGet(nanos);
+        this.nodes.addAndGet(nodes);
+        this.evaluations.addAndGet(evaluations);
+        depths.addAndGet(depth);
+        this.cutoffs.addAndGet(cutoffs);
+        firstMoveCutoffs.addAndGet(firstMove);
+    }
+
+    /**
+     * Register these metrics in the platform MBean server, under name
+     * <code>net.sweetohm.awele:type=Engine,name=</code><i>name</i>.
+     *
+     * @throws JMException If the metrics can't be registered
+     */
+    public synchronized void register() throws JMException {
+        if (objectName != null)
+            return;
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=Engine,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Unregister these metrics from the platform MBean server.
+     *
+     * @throws JMException If the metrics can't be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName == null)
+            return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.unregisterMBean(objectName);
+        objectName = null;
+    }
+
+    public long getMoves() {
+        long total = 0;
+        for (int i = 0; i < moves.length; i++)
+            total += moves[i].get();
+        return (total);
+    }
+
+    public long getSearches() {
+        return (moves[SEARCH].get());
+    }
+
+    public long getBookMoves() {
+        return (moves[BOOK].get());
+    }
+
+    public long getPonderMoves() {
+        return (moves[PONDER].get());
+    }
+
+    public long getForcedMoves() {
+        return (moves[FORCED].get());
+    }
+
+    public long getNodes() {
+        return (nodes.get());
+    }
+
+    public long getEvaluations() {
+        return (evaluations.get());
+    }
+
+    public double getNodesPerSecond() {
+        long time = searchTime.get();
+        return (time == 0 ? 0 : nodes.get() * 1e9 / time);
+    }
+
+    public double getEvaluationsPerSecond() {
+        long time = searchTime.get();
+        return (time == 0 ? 0 : evaluations.get() * 1e9 / time);
+    }
+
+    public double getMeanDepth() {
+        long searches = moves[SEARCH].get();
+        return (searches == 0 ? 0 : (double) depths.get() / searches);
+    }
+
+    public double getFirstMoveCutoffRate() {
+        long total = cutoffs.get();
+        return (total == 0 ? 0 : (double) firstMoveCutoffs.get() / total);
+    }
+
+    public double getLatency50() {
+        return (latency.percentile(0.5) / 1e6);
+    }
+
+    public double getLatency90() {
+        return (latency.percentile(0.9) / 1e6);
+    }
+
+    public double getLatency99() {
+        return (latency.percentile(0.99) / 1e6);
+    }
+
+    public double getLatencyMax() {
+        return (latency.max() / 1e6);
+    }
+
+    public void reset() {
+        for (int i = 0; i < moves.length; i++)
+            moves[i].set(0);
+        nodes.set(0);
+        evaluations.set(0);
+        depths.set(0);
+        cutoffs.set(0);
+        firstMoveCutoffs.set(0);
+        searchTime.set(0);
+        latency.clear();
+    }
+
+    /**
+     * Write the metrics of engines in the Prometheus text format: each
+     * family once, with the samples of all engines labelled with their
+     * names. Counters are cumulative, latency is a summary in seconds.
+     *
+     * @param engines The metrics of the engines
+     * @param out     Where to write
+     * @throws IOException If an error occurs writing
+     */
+    public static void writePrometheus(Iterable<EngineMetrics> engines, Appendable out)
+            throws IOException {
+        String[] origins = {"search", "book", "ponder", "forced"};
+        header(out, "awele_moves_total", "Moves returned, by origin.", "counter");
+        for (EngineMetrics engine : engines)
+            for (int i = 0; i < engine.moves.length; i++)
+                out.append("awele_moves_total" + engine.label() + ",origin=\"" + origins[i]
+                        + "\"} " + engine.moves[i].get() + "\n");
+        for (int c = 0; c < COUNTERS.length; c++) {
+            header(out, COUNTERS[c][0], COUNTERS[c][1], "counter");
+            for (EngineMetrics engine : engines)
+                out.append(COUNTERS[c][0] + engine.label() + "} " + engine.counter(c) + "\n");
+        }
+        header(out, "awele_search_seconds_total", "Time spent searching.", "counter");
+        for (EngineMetrics engine : engines)
+            out.append("awele_search_seconds_total" + engine.label() + "} "
+                    + seconds(engine.searchTime.get()) + "\n");
+        header(out, "awele_move_latency_seconds", "Time to return a move.", "summary");
+        double[] quantiles = {0.5, 0.9, 0.99};
+        for (EngineMetrics engine : engines) {
+            String label = engine.label();
+            for (int i = 0; i < quantiles.length; i++)
+                out.append("awele_move_latency_seconds" + label + ",quantile=\"" + quantiles[i]
+                        + "\"} " + seconds(engine.latency.percentile(quantiles[i])) + "\n");
+            out.append("awele_move_latency_seconds_sum" + label + "} "
+                    + seconds(engine.latency.sum()) + "\n");
+            out.append("awele_move_latency_seconds_count" + label + "} "
+                    + engine.latency.count() + "\n");
+        }
+    }
+
+    /**
+     * @return The engine label, without the closing brace
+     */
+    private String label() {
+        return ("{engine=\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+    }
+
+    /**
+     * @param index Index of a counter in <code>COUNTERS</code>
+     * @return The value of the counter
+     */
+    private long counter(int index) {
+        switch (index) {
+            case 0:
+                return (nodes.get());
+            case 1:
+                return (evaluations.get());
+            case 2:
+                return (depths.get());
+            case 3:
+                return (cutoffs.get());
+            default:
+                return (firstMoveCutoffs.get());
+        }
+    }
+
+    /**
+     * Write the help and type of a family in the Prometheus text format.
+     */
+    private static void header(Appendable out, String metric, String help, String type)
+            throws IOException {
+        out.append("# HELP " + metric + " " + help + "\n");
+        out.append("# TYPE " + metric + " " + type + "\n");
+    }
+
+    /**
+     * Format nanoseconds as seconds.
+     */
+    private static String seconds(long nanos) {
+        return (String.format(Locale.ROOT, "%.6f", nanos / 1e9));
+    }
+}
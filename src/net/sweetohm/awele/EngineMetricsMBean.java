@@ -0,0 +1,104 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Management interface of <code>EngineMetrics</code>. Counters are
+ * cumulative since the start or the last reset, times are in milliseconds.
+ */
+public interface EngineMetricsMBean {
+
+    /**
+     * @return The number of moves returned
+     */
+    long getMoves();
+
+    /**
+     * @return The number of moves that were searched
+     */
+    long getSearches();
+
+    /**
+     * @return The number of moves found in the opening book
+     */
+    long getBookMoves();
+
+    /**
+     * @return The number of moves found while pondering
+     */
+    long getPonderMoves();
+
+    /**
+     * @return The number of moves that were the only legal one
+     */
+    long getForcedMoves();
+
+    /**
+     * @return The number of nodes searched
+     */
+    long getNodes();
+
+    /**
+     * @return The number of calls to the evaluation function
+     */
+    long getEvaluations();
+
+    /**
+     * @return The number of nodes searched per second of search
+     */
+    double getNodesPerSecond();
+
+    /**
+     * @return The number of calls to the evaluation function per second of
+     * search
+     */
+    double getEvaluationsPerSecond();
+
+    /**
+     * @return The mean depth of completed iterations of searches
+     */
+    double getMeanDepth();
+
+    /**
+     * @return The rate of beta cutoffs caused by the first move tried
+     */
+    double getFirstMoveCutoffRate();
+
+    /**
+     * @return The median time to return a move
+     */
+    double getLatency50();
+
+    /**
+     * @return The 90th percentile of the time to return a move
+     */
+    double getLatency90();
+
+    /**
+     * @return The 99th percentile of the time to return a move
+     */
+    double getLatency99();
+
+    /**
+     * @return The maximum time to return a move
+     */
+    double getLatencyMax();
+
+    /**
+     * Reset all counters.
+     */
+    void reset();
+}
@@ -33,7 +33,7 @@ public final class Eval {
      */
     private static final int NORTH = 1;
     /**
-     * The DNa for the evaluation function. The values of this DNA are
+     * The default DNA for the evaluation function. The values of this DNA are
      * parameters resulting from evolution of the evaluation function
      * fighting against mutants (copies with different values in their
      * DNA. Each cell in this array are for:
@@ -47,7 +47,40 @@ public final class Eval {
      * <li> 6: Dam (number of continuous vulnerable holes)
      * </ul>
      */
-    private static final int[] DNA = {100, 20, 40, 0, 80, 70, 60};
+    static final int[] DNA = {100, 20, 40, 0, 80, 70, 60};
+    /**
+     * The DNA of this evaluation function, see <code>DNA</code>
+     */
+    private final int[] dna;
+    /**
+     * Board to unpack packed boards into
+     */
+    private final int[] unpacked = new int[14];
+
+    /**
+     * Constructor with the default DNA.
+     */
+    public Eval() {
+        this(DNA);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dna The DNA, 7 values as <code>DNA</code>
+     */
+    public Eval(int[] dna) {
+        if (dna.length != DNA.length)
+            throw new IllegalArgumentException("DNA must have " + DNA.length + " values");
+        this.dna = dna.clone();
+    }
+
+    /**
+     * @return A copy of the DNA of this evaluation function
+     */
+    public int[] getDna() {
+        return (dna.clone());
+    }
 
     /**
      * Compute the absolute advance with coefficients. Compute the difference of
@@ -57,9 +90,9 @@ public final class Eval {
      * @param side  The side as an int
      * @return The note
      */
-    private static int absoluteAdvance(int board[],
-                                       int side) {
-        return ((board[12] - board[13]) * DNA[0] * (side == NORTH ? 1 : -1));
+    int absoluteAdvance(int board[],
+                        int side) {
+        return ((board[12] - board[13]) * dna[0] * (side == NORTH ? 1 : -1));
     }
 
     /**
@@ -71,12 +104,12 @@ public final class Eval {
      * @param side  The side as an int
      * @return The note
      */
-    private static int potential(int[] board,
-                                 int side) {
+    int potential(int[] board,
+                  int side) {
         int sum = 0;
         for (int i = 0; i < 6; i++) sum += board[i];
         for (int i = 6; i < 12; i++) sum -= board[i];
-        return ((side == NORTH ? sum : -sum) * DNA[1]);
+        return ((side == NORTH ? sum : -sum) * dna[1]);
     }
 
     /**
@@ -87,12 +120,12 @@ public final class Eval {
      * @param side  The side as an int
      * @return The note
      */
-    private static int mobility(int[] board,
-                                int side) {
+    int mobility(int[] board,
+                 int side) {
         int mobility = 0;
         for (int i = 0; i < 6; i++) mobility += (board[i] != 0 ? 1 : 0);
         for (int i = 6; i < 12; i++) mobility -= (board[i] != 0 ? 1 : 0);
-        return (mobility * DNA[2] * (side == NORTH ? 1 : -1));
+        return (mobility * dna[2] * (side == NORTH ? 1 : -1));
     }
 
     /**
@@ -104,12 +137,12 @@ public final class Eval {
      * @param side  The side as an int
      * @return The note
      */
-    private static int tacticMobility(int[] board,
-                                      int side) {
+    int tacticMobility(int[] board,
+                       int side) {
         int tacticMobility = 0;
         for (int i = 0; i < 5; i++) if (i + board[i] < 6) tacticMobility++;
         for (int i = 6; i < 11; i++) if (i + board[i] < 12) tacticMobility--;
-        return (tacticMobility * DNA[3] * (side == NORTH ? 1 : -1));
+        return (tacticMobility * dna[3] * (side == NORTH ? 1 : -1));
     }
 
     /**
@@ -120,17 +153,16 @@ public final class Eval {
      * @param side  The side as an int
      * @return The note
      */
-    private static int threats(int[] board,
-                               int side) {
-        int[] northThreats = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
-        int[] southThreats = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
-        int north = 0;
-        int south = 0;
-        for (int i = 0; i < 6; i++) northThreats[(i + board[i] % 11) % 12]++;
-        for (int i = 6; i < 12; i++) if (northThreats[i] > 0) north++;
-        for (int i = 6; i < 12; i++) southThreats[(i + board[i] % 11) % 12]++;
-        for (int i = 0; i < 6; i++) if (southThreats[i] > 0) south++;
-        return ((north - south) * DNA[4] * (side == NORTH ? 1 : -1));
+    int threats(int[] board,
+                int side) {
+        // bit n of a mask is set if hole n is threatened
+        int northThreats = 0;
+        int southThreats = 0;
+        for (int i = 0; i < 6; i++) northThreats |= 1 << ((i + board[i] % 11) % 12);
+        for (int i = 6; i < 12; i++) southThreats |= 1 << ((i + board[i] % 11) % 12);
+        int north = Integer.bitCount(northThreats & 0xFC0);
+        int south = Integer.bitCount(southThreats & 0x3F);
+        return ((north - south) * dna[4] * (side == NORTH ? 1 : -1));
     }
 
     /**
@@ -141,8 +173,8 @@ public final class Eval {
      * @param side  The side as an int
      * @return The note
      */
-    private static int lofts(int[] board,
-                             int side) {
+    int lofts(int[] board,
+              int side) {
         int northLofts = 0;
         int southLofts = 0;
         for (int i = 0; i < 6; i++)
@@ -151,7 +183,7 @@ public final class Eval {
         for (int i = 6; i < 12; i++)
             if (board[i] > 11 && board[i] < 34 && (i + board[i] % 11) % 12 < 6)
                 southLofts++;
-        return ((northLofts - southLofts) * DNA[5] * (side == NORTH ? 1 : -1));
+        return ((northLofts - southLofts) * dna[5] * (side == NORTH ? 1 : -1));
     }
 
     /**
@@ -163,8 +195,8 @@ public final class Eval {
      * @param side  The side as an int
      * @return The note
      */
-    private static int dams(int[] board,
-                            int side) {
+    int dams(int[] board,
+             int side) {
         int holeSize = 0;
         int maxHoleSize = 0;
         int boardIndex = 0;
@@ -191,7 +223,7 @@ public final class Eval {
         }
         if (holeSize > maxHoleSize) maxHoleSize = holeSize;
         note += maxHoleSize;
-        return note * DNA[6] * (side == NORTH ? 1 : -1);
+        return note * dna[6] * (side == NORTH ? 1 : -1);
     }
 
     /**
@@ -212,6 +244,40 @@ public final class Eval {
                 dams(board, side));
     }
 
+    /**
+     * Evaluate a position from its features, updated incrementally while
+     * moves are played. This gives the same note as a full evaluation of
+     * the board.
+     *
+     * @param features The features of the board
+     * @param side     The side as an int
+     * @return The note
+     */
+    public int evaluate(Features features,
+                        int side) {
+        int note = features.advance * dna[0] +
+                features.potential() * dna[1] +
+                features.mobility() * dna[2] +
+                features.tacticMobility() * dna[3] +
+                features.threats() * dna[4] +
+                features.lofts() * dna[5] +
+                features.dams() * dna[6];
+        return (side == NORTH ? note : -note);
+    }
+
+    /**
+     * Evaluate a packed position for a given side.
+     *
+     * @param board The packed board
+     * @param side  The side as an int
+     * @return The note
+     */
+    public int evaluate(PackedBoard board,
+                        int side) {
+        board.unpack(unpacked);
+        return (evaluate(unpacked, side));
+    }
+
     /**
      * Evaluate the position in the end of a branch.
      *
@@ -221,10 +287,31 @@ public final class Eval {
      */
     public int endEvaluation(int[] board,
                              int side) {
-        int difference = (board[12] - board[13]) * (side == NORTH ? 1 : -1);
+        return (endNote((board[12] - board[13]) * (side == NORTH ? 1 : -1)));
+    }
+
+    /**
+     * Compute the note of a game that ends with a given difference of
+     * captured seeds.
+     *
+     * @param difference The difference of captured seeds for the side
+     * @return The note
+     */
+    static int endNote(int difference) {
         if (difference > 0) return (MAX_NOTE - 100 + difference);
         else if (difference < 0) return (MIN_NOTE + 100 - difference);
         else return 0;
     }
-}
 
+    /**
+     * Evaluate a packed position in the end of a branch.
+     *
+     * @param board The packed board
+     * @param side  The side as an int
+     * @return The note
+     */
+    public int endEvaluation(PackedBoard board,
+                             int side) {
+        return (endNote((board.get(12) - board.get(13)) * (side == NORTH ? 1 : -1)));
+    }
+}
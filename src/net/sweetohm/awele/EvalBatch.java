@@ -0,0 +1,103 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Block of positions to evaluate at once, stored as a structure of arrays:
+ * the seeds of each pit for all positions are contiguous, so that a
+ * <code>BatchEvaluator</code> evaluates several positions per instruction.
+ * A block is filled with <code>add()</code>, evaluated, then read with
+ * <code>note()</code> and cleared to be reused.
+ */
+final class EvalBatch {
+
+    /**
+     * Seeds per pit (holes 0 to 11 and stores 12 and 13), then per
+     * position
+     */
+    final int[][] pits;
+    /**
+     * Side to evaluate for, per position
+     */
+    final int[] sides;
+    /**
+     * Notes, per position, set by the evaluator
+     */
+    final int[] notes;
+    /**
+     * Number of positions
+     */
+    int size;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Maximum number of positions
+     */
+    EvalBatch(int capacity) {
+        pits = new int[14][capacity];
+        sides = new int[capacity];
+        notes = new int[capacity];
+    }
+
+    /**
+     * @return The maximum number of positions
+     */
+    public int capacity() {
+        return (sides.length);
+    }
+
+    /**
+     * @return The number of positions
+     */
+    public int size() {
+        return (size);
+    }
+
+    /**
+     * Add a position.
+     *
+     * @param board The board as an <code>int[]</code>
+     * @param side  The side to evaluate for
+     * @return A <code>boolean</code> that tells if the position was added,
+     * false if the block is full
+     */
+    public boolean add(int[] board, int side) {
+        if (size == sides.length)
+            return (false);
+        for (int p = 0; p < 14; p++)
+            pits[p][size] = board[p];
+        sides[size++] = side;
+        return (true);
+    }
+
+    /**
+     * Give the note of a position, once evaluated.
+     *
+     * @param index The index of the position, in the order of addition
+     * @return The note, as given by <code>Eval.evaluate()</code>
+     */
+    public int note(int index) {
+        return (notes[index]);
+    }
+
+    /**
+     * Remove all positions.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
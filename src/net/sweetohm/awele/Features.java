@@ -0,0 +1,180 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Features of the evaluation function, updated incrementally each time the
+ * number of seeds in a hole or store changes, so that a position is
+ * evaluated without scanning the board (see <code>Eval</code> for the
+ * meaning of features). Features are computed for north: a feature of
+ * south counts negatively.
+ * <p>
+ * An update must cost less than the scan it saves, as the board changes at
+ * every node while only leaves are evaluated. So each update adds the
+ * difference of two table entries to two accumulators:
+ * <ul>
+ * <li>potential, mobility, tactic mobility and lofts are sums of a term per
+ * hole, held in 16 bits fields of a <code>long</code> (with a bias of 64
+ * per hole so that fields stay positive),
+ * <li>threats are counted from the number of holes that reach each hole,
+ * in 4 bits fields of another <code>long</code>, so that a hole threatened
+ * twice is counted once. Bits 48 to 59 of this <code>long</code> are set
+ * for holes with less than 3 seeds, for dams.
+ * </ul>
+ */
+final class Features {
+
+    /**
+     * Maximum number of seeds in a hole
+     */
+    private static final int MAX_SEEDS = 48;
+    /**
+     * Bias of a term per hole
+     */
+    private static final int BIAS = 64;
+    /**
+     * Bias of a sum over all holes
+     */
+    private static final int SUM_BIAS = 12 * BIAS;
+    /**
+     * Terms of additive features per hole and number of seeds
+     */
+    private static final long[] TERMS = new long[12 * (MAX_SEEDS + 1)];
+    /**
+     * Hole reached and dam bit per hole and number of seeds
+     */
+    private static final long[] REACH = new long[12 * (MAX_SEEDS + 1)];
+    /**
+     * Lowest bit of each 4 bits reach field
+     */
+    private static final long NIBBLES = 0x111111111111L;
+    /**
+     * Longest run of set bits in a 6 bits mask
+     */
+    private static final int[] RUN = new int[64];
+    /**
+     * Difference of captured seeds
+     */
+    int advance;
+    /**
+     * Sums of additive features
+     */
+    private long sums;
+    /**
+     * Reach counts and dam bits
+     */
+    private long reach;
+
+    static {
+        for (int hole = 0; hole < 12; hole++) {
+            int sign = (hole < 6 ? 1 : -1);
+            int first = (hole < 6 ? 0 : 6);
+            for (int seeds = 0; seeds <= MAX_SEEDS; seeds++) {
+                int last = (hole + seeds % 11) % 12;
+                boolean other = (last < first || last >= first + 6);
+                long potential = sign * seeds;
+                long mobility = (seeds != 0 ? sign : 0);
+                long tactic = (hole - first < 5 && hole + seeds < first + 6 ? sign : 0);
+                long loft = (seeds > 11 && seeds < 34 && other ? sign : 0);
+                TERMS[hole * (MAX_SEEDS + 1) + seeds] = (BIAS + potential)
+                        | (BIAS + mobility) << 16
+                        | (BIAS + tactic) << 32
+                        | (BIAS + loft) << 48;
+                REACH[hole * (MAX_SEEDS + 1) + seeds] = (other ? 1L << (4 * last) : 0)
+                        | (seeds < 3 ? 1L << (48 + hole) : 0);
+            }
+        }
+        for (int mask = 0; mask < 64; mask++) {
+            int run = 0;
+            for (int i = 0; i < 6; i++) {
+                run = ((mask & (1 << i)) != 0 ? run + 1 : 0);
+                RUN[mask] = Math.max(RUN[mask], run);
+            }
+        }
+    }
+
+    /**
+     * Compute features of a board.
+     *
+     * @param pits The board as an <code>int[]</code>
+     */
+    void set(int[] pits) {
+        advance = pits[12] - pits[13];
+        sums = 0;
+        reach = 0;
+        for (int hole = 0; hole < 12; hole++) {
+            sums += TERMS[hole * (MAX_SEEDS + 1) + pits[hole]];
+            reach += REACH[hole * (MAX_SEEDS + 1) + pits[hole]];
+        }
+    }
+
+    /**
+     * Update features when the number of seeds in a hole changes.
+     *
+     * @param hole The hole (0 to 11)
+     * @param from The number of seeds before
+     * @param to   The number of seeds after
+     */
+    void update(int hole, int from, int to) {
+        int index = hole * (MAX_SEEDS + 1);
+        sums += TERMS[index + to] - TERMS[index + from];
+        reach += REACH[index + to] - REACH[index + from];
+    }
+
+    /**
+     * @return The difference of seeds in holes
+     */
+    int potential() {
+        return ((int) (sums & 0xFFFF) - SUM_BIAS);
+    }
+
+    /**
+     * @return The difference of holes that are not empty
+     */
+    int mobility() {
+        return ((int) ((sums >>> 16) & 0xFFFF) - SUM_BIAS);
+    }
+
+    /**
+     * @return The difference of moves that don't feed the other side
+     */
+    int tacticMobility() {
+        return ((int) ((sums >>> 32) & 0xFFFF) - SUM_BIAS);
+    }
+
+    /**
+     * @return The difference of lofts
+     */
+    int lofts() {
+        return ((int) (sums >>> 48) - SUM_BIAS);
+    }
+
+    /**
+     * @return The difference of threatened holes
+     */
+    int threats() {
+        long reached = (reach | reach >>> 1 | reach >>> 2) & NIBBLES;
+        return (Long.bitCount(reached >>> 24) - Long.bitCount(reached & 0xFFFFFFL));
+    }
+
+    /**
+     * @return The difference of the longest runs of holes with less than 3
+     * seeds (south minus north)
+     */
+    int dams() {
+        return (RUN[(int) (reach >>> 54) & 0x3F] - RUN[(int) (reach >>> 48) & 0x3F]);
+    }
+}
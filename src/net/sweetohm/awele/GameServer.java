@@ -0,0 +1,537 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Network game server. Each connection is a session, served by its own
+ * thread: a virtual thread when the JVM has them (Java 21 and later),
+ * otherwise a platform thread with a small stack. Sessions only wait for
+ * the network; searches are run by a bounded pool of platform threads,
+ * one per core by default, through a bounded queue:
+ * <ul>
+ * <li>a session has at most one search queued or running and the queue is
+ * first in, first out, so that sessions are served in turn,
+ * <li>each session has a clock for its game: a search gets a share of the
+ * remaining time, minus the time spent in the queue,
+ * <li>when the queue is full, <code>go</code> is answered with
+ * <code>error busy</code> at once, and when the maximum number of sessions
+ * is reached, new connections get <code>error full</code> and are closed.
+ * </ul>
+ * Sessions speak a subset of <code>Protocol</code>: <code>isready</code>,
+ * <code>position</code>, <code>moves</code>, <code>go</code> (answered with
+ * <code>bestmove</code>, the move is not played) and <code>quit</code>.
+ * The clock of a session is reset by <code>position</code>.
+ * <p>
+ * Usage: <code>GameServer [options]</code> with options
+ * <code>-port n</code> (default 7777), <code>-bind address</code> (default
+ * loopback), <code>-threads n</code> (search threads, default all cores),
+ * <code>-queue n</code> (queued searches, default 256), <code>-sessions
+ * n</code> (default 100000), <code>-budget ms</code> (clock of a game,
+ * default 60000, 0 to search to the level), <code>-movetime ms</code>
+ * (maximum soft limit of a move, default 1000), <code>-engine ab|mcts</code>
+ * (alpha-beta or Monte-Carlo tree search, default ab), <code>-level
+ * n</code>, <code>-playouts n</code> (Monte-Carlo), <code>-hash
+ * megabytes</code> (per search thread) and <code>-metrics port</code>
+ * (Prometheus endpoint, also registers the JMX MBean, alpha-beta only).
+ */
+final class GameServer {
+
+    /**
+     * Stack size of session platform threads in bytes
+     */
+    private static final long SESSION_STACK_SIZE = 128 * 1024;
+    /**
+     * Number of moves a remaining time is shared between
+     */
+    private static final int MOVES_TO_GO = 20;
+    /**
+     * Length of the queue of pending connections
+     */
+    private static final int BACKLOG = 4096;
+    /**
+     * The engine
+     */
+    private final Engine engine;
+    /**
+     * Server socket
+     */
+    private final ServerSocket server;
+    /**
+     * Threads of sessions
+     */
+    private final ExecutorService sessions;
+    /**
+     * Tells if sessions run in virtual threads
+     */
+    private final boolean virtual;
+    /**
+     * Threads of searches
+     */
+    private final ThreadPoolExecutor searches;
+    /**
+     * Maximum number of sessions
+     */
+    private final int maxSessions;
+    /**
+     * Clock of a game and maximum soft limit of a move in milliseconds
+     */
+    private final long budget;
+    private final long moveTime;
+    /**
+     * Open sessions
+     */
+    private final Set<Session> open = ConcurrentHashMap.newKeySet();
+    /**
+     * Number of searches rejected because the queue was full, and of
+     * connections refused because of the maximum number of sessions
+     */
+    private final AtomicLong busy = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    /**
+     * Number of open sessions, including those being accepted
+     */
+    private final AtomicInteger active = new AtomicInteger();
+    /**
+     * Thread accepting connections
+     */
+    private Thread acceptor;
+    /**
+     * Set when the server is stopped
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor. The server is bound, but does not accept connections
+     * before <code>start()</code>.
+     *
+     * @param engine      The engine
+     * @param address     The address to listen on, port 0 for any free one
+     * @param threads     Number of search threads
+     * @param queue       Number of searches that may wait for a thread
+     * @param maxSessions Maximum number of sessions
+     * @param budget      Clock of a game in milliseconds, 0 to search to the
+     *                    level of the engine
+     * @param moveTime    Maximum soft limit of a move in milliseconds
+     * @throws IOException If the address can't be bound
+     */
+    GameServer(Engine engine, InetSocketAddress address, int threads, int queue,
+               int maxSessions, long budget, long moveTime) throws IOException {
+        this.engine = engine;
+        this.maxSessions = maxSessions;
+        this.budget = budget;
+        this.moveTime = moveTime;
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(address, BACKLOG);
+        searches = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queue), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "awele-search");
+                thread.setDaemon(true);
+                return (thread);
+            }
+        });
+        ExecutorService executor = virtualThreads();
+        virtual = (executor != null);
+        sessions = (virtual ? executor : Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(null, runnable, "awele-session", SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return (thread);
+            }
+        }));
+    }
+
+    /**
+     * Create an executor starting a virtual thread per task, through
+     * reflection so that the server runs on older JVM.
+     *
+     * @return The executor or null if the JVM has no virtual threads
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return ((ExecutorService) method.invoke(null));
+        } catch (Exception e) {
+            return (null);
+        }
+    }
+
+    /**
+     * Start accepting connections.
+     */
+    public void start() {
+        acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "awele-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Stop the server: close all sessions and stop threads.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        for (Session session : open)
+            session.close();
+        sessions.shutdownNow();
+        searches.shutdownNow();
+    }
+
+    /**
+     * @return The port the server listens on
+     */
+    public int getPort() {
+        return (server.getLocalPort());
+    }
+
+    /**
+     * @return A <code>boolean</code> that tells if sessions run in virtual
+     * threads
+     */
+    public boolean isVirtual() {
+        return (virtual);
+    }
+
+    /**
+     * @return The number of open sessions
+     */
+    public int getSessions() {
+        return (open.size());
+    }
+
+    /**
+     * @return The number of searches rejected because the queue was full
+     */
+    public long getBusy() {
+        return (busy.get());
+    }
+
+    /**
+     * @return The number of connections refused because of the maximum
+     * number of sessions
+     */
+    public long getRefused() {
+        return (refused.get());
+    }
+
+    /**
+     * Accept connections until the server is stopped.
+     */
+    private void accept() {
+        while (!stopped) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (!stopped) {
+                    // too many open files for instance, wait for sessions to end
+                    System.err.println("GameServer: " + e.getMessage());
+                    pause();
+                }
+                continue;
+            }
+            Session session = new Session(socket);
+            if (active.incrementAndGet() > maxSessions) {
+                refused.incrementAndGet();
+                session.send("error full");
+                session.close();
+                active.decrementAndGet();
+                continue;
+            }
+            try {
+                sessions.execute(session);
+            } catch (RejectedExecutionException e) {
+                session.close();
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Wait a bit after an error accepting connections.
+     */
+    private static void pause() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A connection, with its game.
+     */
+    private final class Session implements Runnable {
+
+        /**
+         * The socket
+         */
+        private final Socket socket;
+        /**
+         * Where answers are written or null if not open yet
+         */
+        private Writer out;
+        /**
+         * The board
+         */
+        private final int[] board = new int[14];
+        /**
+         * Side to play
+         */
+        private int side;
+        /**
+         * Remaining time of the clock in milliseconds
+         */
+        private long remaining;
+
+        /**
+         * Constructor.
+         *
+         * @param socket The socket
+         */
+        Session(Socket socket) {
+            this.socket = socket;
+            side = Protocol.position(new String[]{"position", "start"}, board);
+            remaining = budget;
+        }
+
+        /**
+         * Serve the session until <code>quit</code> or the connection is
+         * closed.
+         */
+        public void run() {
+            open.add(this);
+            try {
+                socket.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        socket.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while (!stopped && (line = in.readLine()) != null) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].length() == 0)
+                        continue;
+                    if (words[0].equals("quit"))
+                        break;
+                    try {
+                        execute(words);
+                    } catch (IllegalArgumentException e) {
+                        send("error " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                // connection lost
+            } finally {
+                close();
+                open.remove(this);
+                active.decrementAndGet();
+            }
+        }
+
+        /**
+         * Execute a command.
+         */
+        private void execute(String[] words) throws IOException {
+            String command = words[0];
+            if (command.equals("isready"))
+                send("readyok");
+            else if (command.equals("position")) {
+                side = Protocol.position(words, board);
+                remaining = budget;
+            } else if (command.equals("moves"))
+                side = Protocol.play(words, 1, board, side);
+            else if (command.equals("go"))
+                go();
+            else
+                throw new IllegalArgumentException("unknown command " + command);
+        }
+
+        /**
+         * Search the position in the search pool and answer the move.
+         */
+        private void go() throws IOException {
+            final long soft = (budget > 0 ? Math.max(1, Math.min(moveTime, remaining / MOVES_TO_GO)) : 0);
+            final long hard = (budget > 0 ? Math.max(1, Math.min(2 * soft, remaining)) : 0);
+            final long submitted = System.nanoTime();
+            final int[] position = board.clone();
+            final int toPlay = side;
+            Future<Integer> future;
+            try {
+                future = searches.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        // time spent in the queue is taken from the limits
+                        long waited = (System.nanoTime() - submitted) / 1000000;
+                        if (soft == 0)
+                            return (engine.getMove(position, toPlay, 0, 0));
+                        return (engine.getMove(position, toPlay, Math.max(1, soft - waited),
+                                Math.max(1, hard - waited)));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                busy.incrementAndGet();
+                send("error busy");
+                return;
+            }
+            int move;
+            try {
+                move = future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                throw new IOException("session interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            if (budget > 0)
+                remaining = Math.max(0, remaining - (System.nanoTime() - submitted) / 1000000);
+            send("bestmove " + (move == IA.NULL ? "none" : String.valueOf(move)));
+        }
+
+        /**
+         * Write an answer, errors are ignored as they close the session.
+         */
+        void send(String line) {
+            try {
+                if (out == null)
+                    out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                out.write(line);
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Close the connection.
+         */
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * Run a server until the JVM is stopped.
+     *
+     * @param args Options, see above
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 7777;
+        InetAddress bind = InetAddress.getLoopbackAddress();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = 256;
+        int maxSessions = 100000;
+        long budget = 60000;
+        long moveTime = 1000;
+        int metrics = -1;
+        int hash = IA.DEFAULT_HASH_SIZE;
+        int level = 8;
+        boolean mcts = false;
+        int playouts = 20000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-port"))
+                port = Integer.parseInt(value);
+            else if (args[i].equals("-bind"))
+                bind = InetAddress.getByName(value);
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(value);
+            else if (args[i].equals("-queue"))
+                queue = Integer.parseInt(value);
+            else if (args[i].equals("-sessions"))
+                maxSessions = Integer.parseInt(value);
+            else if (args[i].equals("-budget"))
+                budget = Long.parseLong(value);
+            else if (args[i].equals("-movetime"))
+                moveTime = Long.parseLong(value);
+            else if (args[i].equals("-engine")) {
+                if (!value.equals("ab") && !value.equals("mcts"))
+                    throw new IllegalArgumentException("Unknown engine: " + value);
+                mcts = value.equals("mcts");
+            } else if (args[i].equals("-level"))
+                level = Integer.parseInt(value);
+            else if (args[i].equals("-playouts"))
+                playouts = Integer.parseInt(value);
+            else if (args[i].equals("-hash"))
+                hash = Integer.parseInt(value);
+            else if (args[i].equals("-metrics"))
+                metrics = Integer.parseInt(value);
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+        Engine engine;
+        if (mcts) {
+            MctsEngine search = new MctsEngine(hash);
+            search.playouts = playouts;
+            // sessions already share the cores through the search pool
+            search.threads = 1;
+            engine = search;
+        } else {
+            SearchEngine search = new SearchEngine(hash);
+            search.level = level;
+            if (metrics >= 0) {
+                EngineMetrics engineMetrics = new EngineMetrics("server");
+                search.setMetrics(engineMetrics);
+                engineMetrics.register();
+                new MetricsServer(metrics).add(engineMetrics);
+            }
+            engine = search;
+        }
+        GameServer server = new GameServer(engine, new InetSocketAddress(bind, port), threads,
+                queue, maxSessions, budget, moveTime);
+        server.start();
+        System.out.println("Listening on " + bind.getHostAddress() + ":" + server.getPort()
+                + (server.isVirtual() ? " with virtual threads" : " with platform threads"));
+        Thread.currentThread().join();
+    }
+}
@@ -15,16 +15,23 @@
 
 package net.sweetohm.awele;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * IA for the game. This IA implements Minimax and Alpha-Beta well known algorithmes.
  * Note that this class uses <code>Eval</code> one for position evaluation.
+ * The search itself is run by <code>Search</code> objects, one per thread.
  */
 class IA {
 
-    /**
-     * Evaluation function
-     */
-    private Eval eval = new Eval();
     /**
      * Board
      */
@@ -34,21 +41,163 @@ class IA {
      */
     public int level = 8;
     /**
-     * Side to be considered in search function
+     * Soft time limit in milliseconds: no new iteration is started once it
+     * is elapsed. If 0, the search goes to <code>level</code> depth.
+     */
+    public long softTimeLimit = 0;
+    /**
+     * Hard time limit in milliseconds: the search is aborted once it is
+     * elapsed. If 0, there is no hard limit.
+     */
+    public long hardTimeLimit = 0;
+    /**
+     * Tells if the search is a principal variation search: moves after the
+     * first one are tested with a null window
+     */
+    public boolean pvs = true;
+    /**
+     * Half width of aspiration windows in notes, 0 for full windows
+     */
+    public int aspirationWindow = 100;
+    /**
+     * Depth reduction of late quiet moves in half plays, 0 for none
+     */
+    public int lateMoveReduction = 2;
+    /**
+     * Minimum remaining depth to reduce late moves
+     */
+    public int lateMoveDepth = 3;
+    /**
+     * Number of moves searched at full depth before reducing late moves
+     */
+    public int lateMoveCount = 1;
+    /**
+     * Tells if captures are searched beyond <code>level</code> until the
+     * position is quiet (quiescence search)
+     */
+    public boolean quiescence = false;
+    /**
+     * Margin in notes for moves of the opening book to be chosen: moves
+     * whose note is within this margin of the best one may be played
+     */
+    public int bookMargin = 40;
+    /**
+     * Board used to play moves
+     */
+    private Board position = new Board();
+    /**
+     * Transposition table, kept from one move to the next and shared by
+     * search threads
+     */
+    private TranspositionTable table = new TranspositionTable(DEFAULT_HASH_SIZE);
+    /**
+     * Searches, one per thread, the first one runs in the calling thread
+     */
+    private Search[] searches = {new Search(table)};
+    /**
+     * Threads running helper searches
+     */
+    private ExecutorService helpers;
+    /**
+     * Endgame database or null
+     */
+    private EndgameDatabase endgame;
+    /**
+     * DNA of the evaluation function
+     */
+    private int[] dna = Eval.DNA;
+    /**
+     * Opening book or null
+     */
+    private OpeningBook book;
+    /**
+     * Random generator for choices in the opening book
+     */
+    private SplittableRandom random = new SplittableRandom();
+    /**
+     * Thread searching replies of the opponent or null
+     */
+    private Thread ponderer;
+    /**
+     * Set to stop pondering
+     */
+    private volatile boolean stopPonder;
+    /**
+     * Best moves found while pondering, per key of the position after the
+     * reply of the opponent
+     */
+    private final Map<Long, Integer> ponderMoves = new HashMap<Long, Integer>();
+    /**
+     * Options of the searches of <code>ponderMoves</code>, see
+     * <code>options()</code>
+     */
+    private long[] ponderOptions;
+    /**
+     * Number of moves found while pondering
+     */
+    private long ponderHits;
+    /**
+     * Number of nodes searched in last search
+     */
+    private long nodes;
+    /**
+     * Depth of the last completed iteration
+     */
+    private int depthReached;
+    /**
+     * Note of the best move of the last completed iteration
+     */
+    private int note;
+    /**
+     * Number of beta cutoffs in last search, and of those caused by the
+     * first move tried
+     */
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    /**
+     * Number of calls to the evaluation function in last search
+     */
+    private long evaluations;
+    /**
+     * Number of probes of the transposition table in last search, of those
+     * that found an entry and of those that cut the search
+     */
+    private long probes;
+    private long hits;
+    private long hashCutoffs;
+    /**
+     * Time to the end of each completed iteration of last search in
+     * nanoseconds, per depth
+     */
+    private long[] iterationTimes = new long[0];
+    /**
+     * Listener of the progress of searches or null
+     */
+    private SearchListener listener;
+    /**
+     * Set to stop the current search
      */
-    private int side;
+    private volatile boolean stopSearch;
     /**
-     * Side for which we are looking for a move
+     * Metrics where moves are recorded or null
      */
-    private int searchSide;
+    private EngineMetrics metrics;
     /**
-     * Search depth in half plays
+     * Origin of the last move, see <code>EngineMetrics</code>
      */
-    private int searchDepth;
+    private int origin;
     /**
      * Maximum search depth
      */
     public static final int MAX_SEARCH_DEPTH = 16;
+    /**
+     * Maximum depth of iterative deepening when searching with time limits
+     */
+    public static final int MAX_ITERATION_DEPTH = 64;
+    /**
+     * Default transposition table size in megabytes
+     */
+    public static final int DEFAULT_HASH_SIZE = 16;
     /**
      * Constant for north side
      */
@@ -61,10 +210,6 @@ class IA {
      * Constant for void move
      */
     public static final int NULL = 100;
-    /**
-     * Notes in minimax tree
-     */
-    private int[] Notes = new int[MAX_SEARCH_DEPTH];
 
     /**
      * Board initialization.
@@ -84,20 +229,10 @@ class IA {
      * @return A <code>boolean</code> telling if the move is legal
      */
     public boolean isLegal(int move, int side) {
-        // copy the board for backup
-        int[] P = new int[14];
-        System.arraycopy(board, 0, P, 0, board.length);
-        // play the move and check that opposite side has seeds
-        if (play(move, side)) {
-            int S = 0;
-            for (int i = (side == NORTH ? 6 : 0);
-                 i < (side == NORTH ? 12 : 6); i++)
-                S += board[i];
-            System.arraycopy(P, 0, board, 0, board.length);
-            if (S != 0)
-                return (true);
-            else
-                return (false);
+        position.set(board);
+        if (position.make(move, side)) {
+            position.unmake();
+            return (true);
         } else
             return (false);
     }
@@ -110,133 +245,510 @@ class IA {
      * @return A <code>boolean</code> that tells if the move is legal
      */
     public boolean play(int move, int side) {
-        // copy the board for backup
-        int[] P = new int[14];
-        System.arraycopy(board, 0, P, 0, board.length);
-        int seedsCount;
-        int jumpDistance;
-        int seedsMoved;
-        // if move is in the right side
-        if (move >= (side == NORTH ? 0 : 6) &&
-                move < (side == NORTH ? 6 : 12)) {
-            // if a seed in the hole
-            if (board[move] != 0) {
-                seedsCount = board[move];
-                jumpDistance = seedsCount % 11;
-                seedsMoved = seedsCount / 11;
-                // move the seeds on the board
-                for (int i = 1; i < 12; i++) {
-                    board[(move + i) % 12] += seedsMoved + (i > jumpDistance ? 0 : 1);
-                }
-                board[move] = 0;
-                int hole = (move + jumpDistance) % 12;
-                // while we are in the opposite side, we capture seeds if there are
-                // more than one and less than four
-                while (hole >= (side == NORTH ? 6 : 0)
-                        && (hole < (side == NORTH ? 12 : 6)
-                        && board[hole] > 1
-                        && board[hole] < 4)) {
-                    board[side == NORTH ? 12 : 13] +=
-                            board[hole];
-                    board[hole] = 0;
-                    hole--;
-                }
-                int seedsCountOppositeSide = 0;
-                for (int i = (side == NORTH ? 6 : 0);
-                     i < (side == NORTH ? 12 : 6); i++)
-                    seedsCountOppositeSide += board[i];
-                if (seedsCountOppositeSide != 0)
-                    return (true);
-                else {
-                    System.arraycopy(P, 0, board, 0, board.length);
-                    return (false);
-                }
-            } else
-                return (false);
+        position.set(board);
+        if (position.make(move, side)) {
+            position.get(board);
+            return (true);
         } else
             return (false);
     }
 
     /**
-     * Recurrent function for search of moves.
-     *
-     * @return
-     */
-    private int search() {
-        int[] boardCopy = new int[14];
-        int noteMiniMax = ((searchDepth & 1) != 0 ?
-                Eval.MAX_NOTE : Eval.MIN_NOTE);
-        int CoupMM = NULL;
-        boolean Jouable = false;
-        if (searchDepth >= level) {
-            noteMiniMax = eval.evaluate(board, searchSide);
-        } else {
-            System.arraycopy(board, 0, boardCopy, 0, board.length);
-            for (int i = (side == NORTH ? 0 : 6);
-                 i < (side == NORTH ? 6 : 12); i++) {
-                if (play(i, side)) {
-                    Jouable = true;
-                    side *= -1;
-                    searchDepth++;
-                    int Note = search();
-                    // suivante
-                    searchDepth--;
-                    side *= -1;
-                    if (Note == noteMiniMax && Math.random() > 0.5) {
-                        noteMiniMax = Note;
-                        CoupMM = i;
-                    } else if ((searchDepth & 1) != 0 ?
-                            Note < noteMiniMax :
-                            Note > noteMiniMax) {
-                        noteMiniMax = Note;
-                        CoupMM = i;
-                    }
-                    System.arraycopy(boardCopy, 0, board, 0, board.length);
-                    if (((searchDepth & 1) != 0 &&
-                            noteMiniMax < Notes[searchDepth])
-                            || ((searchDepth & 1) == 0 &&
-                            noteMiniMax > Notes[searchDepth])) {
-                        return (noteMiniMax);
-                    }
+     * Resize the transposition table. This clears the table.
+     *
+     * @param megabytes The memory budget in megabytes
+     */
+    public void setHashSize(int megabytes) {
+        stopPondering();
+        ponderMoves.clear();
+        table.resize(megabytes);
+    }
+
+    /**
+     * Clear the transposition table, for instance on new game.
+     */
+    public void clearHash() {
+        stopPondering();
+        ponderMoves.clear();
+        table.clear();
+    }
+
+    /**
+     * Set time limits. With a soft limit of 0, the search goes to
+     * <code>level</code> depth. Moves found while pondering are dropped, as
+     * they were searched with the previous limits.
+     *
+     * @param soft Soft time limit in milliseconds
+     * @param hard Hard time limit in milliseconds or 0 for none
+     */
+    public void setTimeLimits(long soft, long hard) {
+        stopPondering();
+        ponderMoves.clear();
+        softTimeLimit = soft;
+        hardTimeLimit = hard;
+    }
+
+    /**
+     * Set the number of search threads. With more than one thread, helper
+     * threads search the same position and share the transposition table
+     * (Lazy SMP). The move is the one found by the calling thread, helpers
+     * only make it reach deeper faster.
+     *
+     * @param threads The number of threads
+     */
+    public void setThreads(int threads) {
+        stopPondering();
+        threads = Math.max(1, threads);
+        if (threads == searches.length)
+            return;
+        if (helpers != null) {
+            helpers.shutdownNow();
+            helpers = null;
+        }
+        searches = new Search[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(table);
+            searches[i].eval = new Eval(dna);
+            searches[i].endgame = endgame;
+        }
+        if (threads > 1) {
+            helpers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "awele-search");
+                    thread.setDaemon(true);
+                    return (thread);
                 }
+            });
+        }
+    }
+
+    /**
+     * Set the endgame database. Positions found in the database are not
+     * searched, their exact note is used instead.
+     *
+     * @param endgame The database or null for none
+     */
+    public void setEndgameDatabase(EndgameDatabase endgame) {
+        stopPondering();
+        ponderMoves.clear();
+        this.endgame = endgame;
+        for (int i = 0; i < searches.length; i++)
+            searches[i].endgame = endgame;
+        table.clear();
+    }
+
+    /**
+     * Set the DNA of the evaluation function. This clears the transposition
+     * table and the moves found while pondering, as notes change.
+     *
+     * @param dna The DNA, see <code>Eval.DNA</code>
+     */
+    public void setDna(int[] dna) {
+        stopPondering();
+        ponderMoves.clear();
+        this.dna = new Eval(dna).getDna();
+        for (int i = 0; i < searches.length; i++)
+            searches[i].eval = new Eval(dna);
+        table.clear();
+    }
+
+    /**
+     * @return A copy of the DNA of the evaluation function
+     */
+    public int[] getDna() {
+        return (dna.clone());
+    }
+
+    /**
+     * Seed the random generators of the opening book and of the searches,
+     * that choose between moves with the same note. With one thread and a
+     * cleared transposition table, the moves are then reproducible.
+     *
+     * @param seed The seed
+     */
+    public void setSeed(long seed) {
+        stopPondering();
+        ponderMoves.clear();
+        SplittableRandom root = new SplittableRandom(seed);
+        random = root.split();
+        for (int i = 0; i < searches.length; i++) {
+            searches[i].random = root.split();
+            searches[i].clearHistory();
+        }
+    }
+
+    /**
+     * Set the opening book. Positions found in the book are not searched,
+     * a move of the book is played instead.
+     *
+     * @param book The book or null for none
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Start searching the replies of the opponent in the background, while
+     * the opponent thinks: the predicted reply first (the best move found
+     * by the last search), then the other ones. Each reply is searched as
+     * by <code>getMove()</code>, so that if the opponent plays a reply that
+     * was searched, <code>getMove()</code> returns at once, provided the
+     * search options were not changed meanwhile. Otherwise, the search
+     * benefits from the transposition table filled while pondering.
+     *
+     * @param Cm The side to play after the opponent
+     */
+    public void startPondering(final int Cm) {
+        stopPondering();
+        final int[] start = board.clone();
+        stopPonder = false;
+        ponderMoves.clear();
+        ponderOptions = options();
+        ponderer = new Thread(new Runnable() {
+            public void run() {
+                ponder(start, Cm);
             }
-            if (!Jouable) {
-                noteMiniMax = eval.endEvaluation(board, searchSide);
-            }
-            if ((searchDepth & 1) != 0 ?
-                    noteMiniMax > Notes[searchDepth] :
-                    noteMiniMax < Notes[searchDepth]) {
-                Notes[searchDepth] = noteMiniMax;
-            }
+        }, "awele-ponder");
+        ponderer.setDaemon(true);
+        ponderer.start();
+    }
+
+    /**
+     * Stop pondering and wait for the pondering thread to end. Moves found
+     * so far are kept.
+     */
+    public void stopPondering() {
+        if (ponderer == null)
+            return;
+        stopPonder = true;
+        for (int i = 0; i < searches.length; i++)
+            searches[i].abort = true;
+        try {
+            ponderer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ponderer = null;
+    }
+
+    /**
+     * @return The number of moves returned by <code>getMove()</code> that
+     * were found while pondering
+     */
+    public long getPonderHits() {
+        return (ponderHits);
+    }
+
+    /**
+     * @return The public fields that change the move chosen, so that moves
+     * found while pondering are used only if they did not change
+     */
+    private long[] options() {
+        return (new long[]{level, softTimeLimit, hardTimeLimit, pvs ? 1 : 0, aspirationWindow,
+                lateMoveReduction, lateMoveDepth, lateMoveCount, quiescence ? 1 : 0, bookMargin});
+    }
+
+    /**
+     * Search the replies of the opponent.
+     *
+     * @param start The board with the opponent to play
+     * @param Cm    The side to play after the opponent
+     */
+    private void ponder(int[] start, int Cm) {
+        Board after = new Board();
+        after.set(start);
+        int replies = after.legalMoves(-Cm);
+        int predicted = TranspositionTable.move(table.probe(after.key(-Cm)));
+        int[] pits = new int[14];
+        for (int n = -1; n < 12 && !stopPonder; n++) {
+            int reply = (n < 0 ? predicted : n);
+            if (reply == NULL || (replies & (1 << reply)) == 0 || (n >= 0 && reply == predicted))
+                continue;
+            after.set(start);
+            after.make(reply, -Cm);
+            after.get(pits);
+            int moves = after.legalMoves(Cm);
+            // getMove() answers at once without a choice
+            if (Integer.bitCount(moves) < 2)
+                continue;
+            int move = search(pits, Cm, moves, System.nanoTime(), true);
+            if (!stopPonder)
+                ponderMoves.put(after.key(Cm), move);
         }
-        Notes[searchDepth + 1] = ((searchDepth & 1) != 0 ?
-                Eval.MAX_NOTE : Eval.MIN_NOTE);
-        return (searchDepth != 0 ? noteMiniMax : CoupMM);
     }
 
+    /**
+     * Set the metrics where moves are recorded. Without metrics, only the
+     * counters of the last search are kept.
+     *
+     * @param metrics The metrics or null for none
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the listener of the progress of searches run by
+     * <code>getMove()</code>. Searches run while pondering are not reported.
+     *
+     * @param listener The listener or null for none
+     */
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stop the search run by <code>getMove()</code> in another thread. The
+     * search returns the best move of the last completed iteration, or the
+     * first move tried if no iteration was completed. A search started
+     * after this call is not stopped.
+     */
+    public void stop() {
+        stopSearch = true;
+        for (int i = 0; i < searches.length; i++)
+            searches[i].abort = true;
+    }
+
+    /**
+     * @return The metrics where moves are recorded or null
+     */
+    public EngineMetrics getMetrics() {
+        return (metrics);
+    }
+
+    /**
+     * @return The number of search threads
+     */
+    public int getThreads() {
+        return (searches.length);
+    }
+
+    /**
+     * @return The number of nodes searched in last search
+     */
+    public long getNodes() {
+        return (nodes);
+    }
+
+    /**
+     * @return The number of calls to the evaluation function in last search
+     */
+    public long getEvaluations() {
+        return (evaluations);
+    }
+
+    /**
+     * @return The time from the start of last search to the end of each
+     * completed iteration in nanoseconds, indexed by depth
+     */
+    public long[] getIterationTimes() {
+        return (iterationTimes.clone());
+    }
+
+    /**
+     * @return The rate of beta cutoffs caused by the first move tried in
+     * last search, that tells how good move ordering is
+     */
+    public double getFirstMoveCutoffRate() {
+        return (cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs);
+    }
+
+    /**
+     * @return The rate of probes of the transposition table that found an
+     * entry in last search
+     */
+    public double getHashHitRate() {
+        return (probes == 0 ? 0 : (double) hits / probes);
+    }
+
+    /**
+     * @return The rate of probes of the transposition table that cut the
+     * search in last search
+     */
+    public double getHashCutoffRate() {
+        return (probes == 0 ? 0 : (double) hashCutoffs / probes);
+    }
+
+    /**
+     * @return The note of the best move of last search, for the side that
+     * played
+     */
+    public int getNote() {
+        return (note);
+    }
+
+    /**
+     * @return The depth of the last completed iteration of last search
+     */
+    public int getDepth() {
+        return (depthReached);
+    }
+
+    /**
+     * Look for the best move in a packed board. The board of this IA is
+     * set to this board.
+     *
+     * @param packed The packed board
+     * @param Cm     The side to play
+     * @return The best move or <code>NULL</code> if there is no legal move
+     */
+    public int getMove(PackedBoard packed, int Cm) {
+        packed.unpack(board);
+        return (getMove(Cm));
+    }
+
+    /**
+     * Look for the best move. If the position is in the opening book or was
+     * searched while pondering, a move is returned without search. Otherwise the search deepens
+     * one half play at a time, up to <code>level</code> or, if a soft time
+     * limit is set, until it is elapsed. Then it returns the best move of
+     * the last completed iteration.
+     *
+     * @param Cm The side to play
+     * @return The best move or <code>NULL</code> if there is no legal move
+     */
     public int getMove(int Cm) {
-        int Cp;
-        int unCp = NULL;
-        int NbCp = 0;
-        for (Cp = (Cm == NORTH ? 0 : 6);
-             Cp < (Cm == NORTH ? 6 : 12); Cp++) {
-            if (isLegal(Cp, Cm)) {
-                unCp = Cp;
-                NbCp++;
+        stopPondering();
+        stopSearch = false;
+        long start = System.nanoTime();
+        nodes = 0;
+        depthReached = 0;
+        note = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        evaluations = 0;
+        probes = 0;
+        hits = 0;
+        hashCutoffs = 0;
+        iterationTimes = new long[0];
+        int move = chooseMove(Cm, start);
+        if (metrics != null && move != NULL)
+            metrics.record(origin, System.nanoTime() - start, nodes, evaluations, depthReached,
+                    cutoffs, firstMoveCutoffs);
+        return (move);
+    }
+
+    /**
+     * Choose the move of <code>getMove()</code> and set its origin.
+     *
+     * @param Cm    The side to play
+     * @param start Start time (see <code>System.nanoTime()</code>)
+     * @return The best move or <code>NULL</code> if there is no legal move
+     */
+    private int chooseMove(int Cm, long start) {
+        position.set(board);
+        int moves = position.legalMoves(Cm);
+        if (moves == 0)
+            return (NULL);
+        origin = EngineMetrics.FORCED;
+        if (Integer.bitCount(moves) == 1)
+            return (Integer.numberOfTrailingZeros(moves));
+        origin = EngineMetrics.BOOK;
+        if (book != null) {
+            int move = book.choose(position.key(Cm), Cm, bookMargin, random);
+            if (move != NULL && (moves & (1 << move)) != 0)
+                return (move);
+        }
+        origin = EngineMetrics.PONDER;
+        if (Arrays.equals(ponderOptions, options())) {
+            Integer move = ponderMoves.get(position.key(Cm));
+            if (move != null) {
+                ponderHits++;
+                return (move);
             }
         }
-        if (NbCp == 0)
-            return (NULL);
-        if (NbCp == 1)
-            return (unCp);
-        side = Cm;
-        searchSide = Cm;
-        searchDepth = 0;
-        for (int i = 0; i < MAX_SEARCH_DEPTH; i++) {
-            Notes[i] = ((i & 1) != 0 ?
-                    Eval.MIN_NOTE : Eval.MAX_NOTE);
+        origin = EngineMetrics.SEARCH;
+        return (search(board, Cm, moves, start, false));
+    }
+
+    /**
+     * Run the search.
+     *
+     * @param board  The board
+     * @param Cm     The side to play
+     * @param moves  The legal moves as a bitmask
+     * @param start  Start time of the search (see <code>System.nanoTime()</code>)
+     * @param ponder Tells if the search may be stopped by <code>stopPondering()</code>
+     * @return The best move
+     */
+    private int search(int[] board, int Cm, int moves, long start, boolean ponder) {
+        table.newSearch();
+        final long soft = softTimeLimit * 1000000L;
+        final long deadline = (hardTimeLimit > 0 ?
+                start + hardTimeLimit * 1000000L : Long.MAX_VALUE);
+        final int maxDepth = (softTimeLimit > 0 ? MAX_ITERATION_DEPTH : level);
+        for (int i = 0; i < searches.length; i++) {
+            Search search = searches[i];
+            search.pvs = pvs;
+            search.aspiration = aspirationWindow;
+            search.lmrReduction = (pvs ? lateMoveReduction : 0);
+            search.lmrDepth = lateMoveDepth;
+            search.lmrMoves = lateMoveCount;
+            search.quiescence = quiescence;
+        }
+        // helpers start at different depths and root moves to diverge
+        Future<?>[] futures = new Future<?>[searches.length];
+        for (int i = 1; i < searches.length; i++) {
+            final Search helper = searches[i];
+            final int firstDepth = 1 + (i & 1);
+            helper.setup(board, Cm, moves, i);
+            futures[i] = helpers.submit(new Runnable() {
+                public void run() {
+                    helper.think(firstDepth, maxDepth, 0, 0, Long.MAX_VALUE);
+                }
+            });
+        }
+        Search main = searches[0];
+        main.setup(board, Cm, moves, 0);
+        main.listener = (ponder || listener == null ? null : new SearchListener() {
+            public void iteration(int depth, int note, int move, long nodes, long nanos) {
+                for (int i = 1; i < searches.length; i++)
+                    nodes += searches[i].nodes;
+                listener.iteration(depth, note, move, nodes, nanos);
+            }
+        });
+        // setup clears abort flags, so check for a stop requested meanwhile
+        if (ponder ? stopPonder : stopSearch)
+            for (int i = 0; i < searches.length; i++)
+                searches[i].abort = true;
+        int move = main.think(1, maxDepth, start, soft, deadline);
+        for (int i = 1; i < searches.length; i++)
+            searches[i].abort = true;
+        // wait for every helper, as their searches are reused by the next call
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (int i = 1; i < searches.length; i++) {
+            while (true) {
+                try {
+                    futures[i].get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure != null)
+            throw new IllegalStateException(failure);
+        if (ponder)
+            return (move);
+        for (int i = 0; i < searches.length; i++) {
+            nodes += searches[i].nodes;
+            cutoffs += searches[i].cutoffs;
+            firstMoveCutoffs += searches[i].firstMoveCutoffs;
+            evaluations += searches[i].evaluations;
+            probes += searches[i].probes;
+            hits += searches[i].hits;
+            hashCutoffs += searches[i].hashCutoffs;
         }
-        Cp = search();
-        return (Cp);
+        depthReached = main.depthReached;
+        iterationTimes = Arrays.copyOf(main.iterationTimes, depthReached + 1);
+        note = main.bestNote;
+        return (move);
     }
 }
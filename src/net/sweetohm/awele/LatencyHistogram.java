@@ -0,0 +1,139 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies, safe for concurrent recording. Latencies are
+ * counted in microseconds, in buckets of logarithmic size: each power of
+ * two is split in four buckets, so that percentiles are known within 25%.
+ * Recording is a few atomic increments and allocates nothing.
+ */
+final class LatencyHistogram {
+
+    /**
+     * Number of buckets, up to 2^40 microseconds
+     */
+    private static final int BUCKETS = 160;
+    /**
+     * Number of latencies per bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * Number of latencies
+     */
+    private final AtomicLong count = new AtomicLong();
+    /**
+     * Sum of latencies in nanoseconds
+     */
+    private final AtomicLong sum = new AtomicLong();
+    /**
+     * Maximum latency in nanoseconds
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(nanos / 1000));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos))
+            ;
+    }
+
+    /**
+     * @return The number of latencies
+     */
+    public long count() {
+        return (count.get());
+    }
+
+    /**
+     * @return The sum of latencies in nanoseconds
+     */
+    public long sum() {
+        return (sum.get());
+    }
+
+    /**
+     * @return The maximum latency in nanoseconds
+     */
+    public long max() {
+        return (max.get());
+    }
+
+    /**
+     * Give a percentile of latencies. This is the upper bound of the bucket
+     * holding the percentile, but never more than the maximum.
+     *
+     * @param percentile The percentile, between 0 and 1
+     * @return The latency in nanoseconds, 0 if there is none
+     */
+    public long percentile(double percentile) {
+        long total = count.get();
+        if (total == 0)
+            return (0);
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return (Math.min(max.get(), (lower(i + 1) - 1) * 1000 + 999));
+        }
+        return (max.get());
+    }
+
+    /**
+     * Clear the histogram.
+     */
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Index of the bucket of a latency: values below 4 have their own
+     * bucket, then each power of two has four.
+     */
+    private static int bucket(long micros) {
+        if (micros < 4)
+            return ((int) micros);
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int index = (exponent - 1) * 4 + (int) ((micros >>> (exponent - 2)) & 3);
+        return (Math.min(BUCKETS - 1, index));
+    }
+
+    /**
+     * Lowest latency in microseconds of a bucket.
+     */
+    private static long lower(int bucket) {
+        if (bucket < 4)
+            return (bucket);
+        int exponent = bucket / 4 + 1;
+        return ((long) (4 + bucket % 4) << (exponent - 2));
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Load generator for <code>GameServer</code>. It opens a number of sessions
+ * that play games as fast as possible: each session asks for a move with
+ * <code>go</code>, plays it and asks again, so that the server plays both
+ * sides, and starts a new game when one is over. All sessions are driven
+ * by one thread with non blocking sockets, so that the load generator
+ * costs little next to the server.
+ * <p>
+ * For each number of sessions, once all sessions are connected, it counts
+ * moves during a given time and reports moves per second and latency
+ * percentiles of <code>go</code>, and the number of <code>error
+ * busy</code> answers (the session asks again after a pause). The number
+ * of sessions is limited by the number of files the process may open.
+ * <p>
+ * Usage: <code>LoadGenerator [options]</code> with options <code>-host
+ * address</code> and <code>-port n</code> of the server (by default, a
+ * server is started in this JVM on a free loopback port), <code>-sessions
+ * n,n,...</code> (default 1000,10000,50000), <code>-seconds n</code>
+ * (measure time, default 10), <code>-plies n</code> (half plays of a game,
+ * default 100), and for the server started in this JVM <code>-threads
+ * n</code>, <code>-queue n</code>, <code>-level n</code>, <code>-budget
+ * ms</code> (default 0: moves are searched to the level, so that the
+ * server is measured at a fixed work per move), <code>-movetime ms</code>
+ * and <code>-hash megabytes</code>, see <code>GameServer</code>.
+ */
+final class LoadGenerator {
+
+    /**
+     * Pause of a session after <code>error busy</code> in nanoseconds
+     */
+    private static final long RETRY_DELAY = 10000000L;
+    /**
+     * Time to connect all sessions in milliseconds
+     */
+    private static final long CONNECT_TIMEOUT = 60000;
+    /**
+     * File descriptors kept free for the JVM (class loading, logs...)
+     */
+    private static final long FREE_DESCRIPTORS = 512;
+    /**
+     * Server address
+     */
+    private final InetSocketAddress address;
+    /**
+     * Half plays of a game before a new one
+     */
+    private final int plies;
+    /**
+     * Latencies of moves
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+    /**
+     * Number of moves, busy answers and other errors
+     */
+    private long moves;
+    private long busy;
+    private long errors;
+    /**
+     * Tells if moves are counted
+     */
+    private boolean measuring;
+
+    /**
+     * Constructor.
+     *
+     * @param address Server address
+     * @param plies   Half plays of a game before a new one
+     */
+    LoadGenerator(InetSocketAddress address, int plies) {
+        this.address = address;
+        this.plies = plies;
+    }
+
+    /**
+     * Run sessions and report.
+     *
+     * @param count   Number of sessions
+     * @param seconds Measure time in seconds
+     * @return The report
+     * @throws IOException If the selector can't be opened
+     */
+    String run(int count, int seconds) throws IOException {
+        latency.clear();
+        moves = busy = errors = 0;
+        measuring = false;
+        // closing a channel needs classes that can't be loaded once file
+        // descriptors are exhausted, so load them first
+        SocketChannel.open().close();
+        Selector selector = Selector.open();
+        List<Client> clients = new ArrayList<Client>();
+        ArrayDeque<Client> retries = new ArrayDeque<Client>();
+        String failure = null;
+        try {
+            for (int i = 0; i < count; i++) {
+                try {
+                    clients.add(new Client(selector));
+                } catch (IOException e) {
+                    failure = e.getMessage();
+                    break;
+                }
+            }
+            long end = System.currentTimeMillis() + CONNECT_TIMEOUT;
+            int connected = 0;
+            while (!measuring || System.currentTimeMillis() < end) {
+                selector.select(1);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isConnectable() && client.connect())
+                            connected++;
+                        else if (key.isValid() && key.isWritable())
+                            client.flush();
+                        if (key.isValid() && key.isReadable())
+                            client.read(retries);
+                    } catch (IOException e) {
+                        errors++;
+                        client.close();
+                    }
+                }
+                long now = System.nanoTime();
+                while (!retries.isEmpty() && retries.peek().retry <= now) {
+                    Client client = retries.poll();
+                    try {
+                        client.send("go\n", now);
+                    } catch (IOException e) {
+                        errors++;
+                        client.close();
+                    }
+                }
+                if (!measuring && (connected == clients.size() || System.currentTimeMillis() >= end)) {
+                    // all sessions are playing, start measuring
+                    measuring = true;
+                    latency.clear();
+                    moves = busy = errors = 0;
+                    end = System.currentTimeMillis() + seconds * 1000L;
+                    if (connected < clients.size() && failure == null)
+                        failure = (clients.size() - connected) + " connections timed out";
+                }
+            }
+            return (String.format("sessions %d connected %d moves %d moves/s %.0f"
+                            + " p50 %.1f ms p99 %.1f ms max %.1f ms busy %d errors %d%s",
+                    count, connected, moves, moves / (double) seconds,
+                    latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6,
+                    latency.max() / 1e6, busy, errors,
+                    (failure == null ? "" : " (" + failure + ")")));
+        } finally {
+            for (Client client : clients)
+                client.close();
+            selector.close();
+        }
+    }
+
+    /**
+     * A session.
+     */
+    private final class Client {
+
+        /**
+         * The channel
+         */
+        private final SocketChannel channel;
+        /**
+         * Its key
+         */
+        private final SelectionKey key;
+        /**
+         * Bytes read and not processed yet
+         */
+        private final ByteBuffer input = ByteBuffer.allocate(256);
+        /**
+         * Bytes to write or null
+         */
+        private ByteBuffer output;
+        /**
+         * Time the last <code>go</code> was sent
+         */
+        private long sent;
+        /**
+         * Time to send <code>go</code> again after <code>error busy</code>
+         */
+        long retry;
+        /**
+         * Half plays of the current game
+         */
+        private int ply;
+
+        /**
+         * Open a connection.
+         */
+        Client(Selector selector) throws IOException {
+            channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(address);
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Finish connecting and start a game.
+         *
+         * @return A <code>boolean</code> that tells if the connection is
+         * done
+         */
+        boolean connect() throws IOException {
+            if (!channel.finishConnect())
+                return (false);
+            key.interestOps(SelectionKey.OP_READ);
+            send("position start\ngo\n", System.nanoTime());
+            return (true);
+        }
+
+        /**
+         * Send commands, the last one being <code>go</code>.
+         */
+        void send(String commands, long now) throws IOException {
+            output = ByteBuffer.wrap(commands.getBytes(StandardCharsets.US_ASCII));
+            sent = now;
+            flush();
+        }
+
+        /**
+         * Write pending bytes.
+         */
+        void flush() throws IOException {
+            channel.write(output);
+            key.interestOps(output.hasRemaining() ?
+                    SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Read and process answers.
+         */
+        void read(ArrayDeque<Client> retries) throws IOException {
+            if (channel.read(input) < 0)
+                throw new IOException("connection closed");
+            input.flip();
+            int start = input.position();
+            for (int i = start; i < input.limit(); i++) {
+                if (input.get(i) != '\n')
+                    continue;
+                String line = new String(input.array(), start, i - start, StandardCharsets.US_ASCII);
+                start = i + 1;
+                answer(line, retries);
+            }
+            input.position(start);
+            input.compact();
+        }
+
+        /**
+         * Process an answer.
+         */
+        private void answer(String line, ArrayDeque<Client> retries) throws IOException {
+            long now = System.nanoTime();
+            if (line.startsWith("bestmove ")) {
+                if (measuring) {
+                    moves++;
+                    latency.record(now - sent);
+                }
+                String move = line.substring(9);
+                if (move.equals("none") || ++ply >= plies) {
+                    ply = 0;
+                    send("position start\ngo\n", now);
+                } else
+                    send("moves " + move + "\ngo\n", now);
+            } else if (line.equals("error busy")) {
+                if (measuring)
+                    busy++;
+                retry = now + RETRY_DELAY;
+                retries.add(this);
+            } else if (line.equals("error full"))
+                throw new IOException("server full");
+            else if (line.startsWith("error")) {
+                errors++;
+                ply = 0;
+                send("position start\ngo\n", now);
+            }
+        }
+
+        /**
+         * Close the connection.
+         */
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * Give the maximum number of sessions allowed by the limit of open
+     * files of the process, with a socket per session, and another one if
+     * the server runs in this JVM.
+     *
+     * @param server Tells if the server runs in this JVM
+     * @return The maximum number of sessions
+     */
+    static long maxSessions(boolean server) {
+        OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+        if (!(system instanceof com.sun.management.UnixOperatingSystemMXBean))
+            return (Integer.MAX_VALUE);
+        com.sun.management.UnixOperatingSystemMXBean unix =
+                (com.sun.management.UnixOperatingSystemMXBean) system;
+        long free = unix.getMaxFileDescriptorCount() - unix.getOpenFileDescriptorCount()
+                - FREE_DESCRIPTORS;
+        return (Math.max(1, free / (server ? 2 : 1)));
+    }
+
+    /**
+     * Run the load generator.
+     *
+     * @param args Options, see above
+     */
+    public static void main(String[] args) throws Exception {
+        String host = null;
+        int port = 7777;
+        String sessions = "1000,10000,50000";
+        int seconds = 10;
+        int plies = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = 256;
+        int level = 8;
+        long budget = 0;
+        long moveTime = 1000;
+        int hash = IA.DEFAULT_HASH_SIZE;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-host"))
+                host = value;
+            else if (args[i].equals("-port"))
+                port = Integer.parseInt(value);
+            else if (args[i].equals("-sessions"))
+                sessions = value;
+            else if (args[i].equals("-seconds"))
+                seconds = Integer.parseInt(value);
+            else if (args[i].equals("-plies"))
+                plies = Integer.parseInt(value);
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(value);
+            else if (args[i].equals("-queue"))
+                queue = Integer.parseInt(value);
+            else if (args[i].equals("-level"))
+                level = Integer.parseInt(value);
+            else if (args[i].equals("-budget"))
+                budget = Long.parseLong(value);
+            else if (args[i].equals("-movetime"))
+                moveTime = Long.parseLong(value);
+            else if (args[i].equals("-hash"))
+                hash = Integer.parseInt(value);
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+        GameServer server = null;
+        InetSocketAddress address;
+        if (host == null) {
+            SearchEngine engine = new SearchEngine(hash);
+            engine.level = level;
+            server = new GameServer(engine, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    threads, queue, Integer.MAX_VALUE, budget, moveTime);
+            server.start();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            System.out.println("Server on port " + server.getPort() + " with " + threads
+                    + " search threads and " + (server.isVirtual() ? "virtual" : "platform")
+                    + " session threads");
+        } else
+            address = new InetSocketAddress(host, port);
+        LoadGenerator generator = new LoadGenerator(address, plies);
+        long limit = maxSessions(server != null);
+        for (String count : sessions.split(",")) {
+            int n = Integer.parseInt(count);
+            if (n > limit) {
+                System.out.println("sessions " + n + " limited to " + limit
+                        + " by the number of file descriptors");
+                n = (int) limit;
+            }
+            System.out.println(generator.run(n, seconds));
+            if (server != null) {
+                // let sessions of this run end before the next one
+                for (int i = 0; i < 100 && server.getSessions() > 0; i++)
+                    Thread.sleep(100);
+            }
+        }
+        if (server != null)
+            server.stop();
+    }
+}
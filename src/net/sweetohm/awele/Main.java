@@ -2,12 +2,12 @@
  * This program is free software; you can redistribute it and/or modify it under
  * the terms of the GNU General Public License as published by the Free Software
  * Foundation; either version 2 of the License, or any later version.
- *
+ * 
  * This program is distributed in the hope that it will be useful, but WITHOUT
  * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
  * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
  * details.
- *
+ * 
  * You should have received a copy of the GNU General Public License along with
  * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
  * Place - Suite 330, Boston, MA 02111-1307, USA.
@@ -15,55 +15,84 @@
 
 package net.sweetohm.awele;
 
-import java.awt.*;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
-import java.applet.Applet;
+import javax.imageio.ImageIO;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * This is the entry point of the Awele program.
+ * <p>
+ * The board is a Swing panel. All its state is only read and written on the
+ * event dispatch thread; the thread of the engine hands a copy of the board
+ * over with <code>SwingUtilities.invokeLater()</code>. Only the holes whose
+ * number of seeds changed are repainted, from pictures converted to the
+ * format of the screen and from sprites of the digits drawn once.
  */
-public class Main extends Applet implements Runnable {
+public class Main extends JPanel implements Runnable {
 
     /**
-     * Tell if we are running in a standalone program
+     * Width and height of the board
      */
-    private static boolean isProgram = false;
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
     /**
-     * Thread to search next move
+     * Position of the light bulb
      */
-    private Thread thread;
+    private static final int AMPOULE_X = 180;
+    private static final int AMPOULE_Y = 205;
     /**
-     * Board
+     * Tell if paint times are printed, with system property
+     * <code>awele.timing</code>
      */
-    private int[] board;
+    private static final boolean TIMING = Boolean.getBoolean("awele.timing");
+    /**
+     * Board, as displayed
+     */
+    private final int[] board = new int[14];
     /**
      * Screen picture
      */
-    private Image ecran;
+    private BufferedImage ecran;
     /**
      * mark picture
      */
-    private Image marque;
+    private BufferedImage marque;
     /**
      * light bulb picture
      */
-    private Image ampoule;
+    private BufferedImage ampoule;
     /**
-     * double buffering RAM picture
+     * sprites of digits, for number of seeds printing
      */
-    private Image image;
+    private final BufferedImage[] chiffres = new BufferedImage[10];
     /**
-     * font for number of seeds printing
+     * FontMetrics of the font of digits
      */
-    private Font fonte;
+    private FontMetrics fm;
     /**
-     * FontMetrics
+     * Area repainted when the number of seeds of a hole changes
      */
-    private FontMetrics fm;
+    private final Rectangle[] zones = new Rectangle[14];
     /**
      * AI
      */
-    private IA ia = new IA();
+    private final IA ia = new IA();
     /**
      * tells if machine should play
      */
@@ -72,6 +101,10 @@ public class Main extends Applet implements Runnable {
      * tells if machine is computing
      */
     private boolean pensif = false;
+    /**
+     * tells if the first paint is to come, for start-up timing
+     */
+    private boolean premier = true;
     /**
      * constants for north, south and null
      */
@@ -107,142 +140,261 @@ public class Main extends Applet implements Runnable {
     };
 
     /**
-     * Main for program.
+     * Main for program. With system property <code>awele.jmx</code> set to
+     * true, metrics of the engine are registered as a JMX MBean; with
+     * <code>awele.metrics.port</code>, they are also given in the Prometheus
+     * text format on this local port. With <code>awele.timing</code> set to
+     * true, start-up time and the time of each repaint are printed.
+     */
+    public static void main(String[] args) throws Exception {
+        // Swing components are built on the event dispatch thread only
+        final Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                try {
+                    open();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    /**
+     * Build the board, wire metrics and show the window.
      */
-    public static void main(String[] args) {
-        isProgram = true;
-        CloseableFrame frame = new CloseableFrame(Constants.COPYRIGHT);
-        Main applet = new Main();
-        frame.add("Center", applet);
+    private static void open() throws Exception {
+        Main main = new Main();
+        String port = System.getProperty("awele.metrics.port");
+        if (Boolean.getBoolean("awele.jmx") || port != null) {
+            EngineMetrics metrics = new EngineMetrics("awele");
+            main.ia.setMetrics(metrics);
+            if (Boolean.getBoolean("awele.jmx"))
+                metrics.register();
+            if (port != null)
+                new MetricsServer(Integer.parseInt(port)).add(metrics);
+        }
+        JFrame frame = new JFrame(Constants.COPYRIGHT);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.add(main);
         frame.setResizable(false);
         frame.pack();
-        applet.init();
-        applet.start();
-        frame.show();
+        frame.setVisible(true);
     }
 
     /**
-     * Applet init.
+     * Constructor: load pictures, draw sprites and set up the engine.
      */
-    public void init() {
+    public Main() throws IOException {
+        setOpaque(true);
         chargerImages();
-        fonte = new Font("Courrier", Font.PLAIN, 20);
-        fm = getFontMetrics(fonte);
+        dessinerChiffres(new Font("Courrier", Font.PLAIN, 20));
+        for (int i = 0; i < 14; i++)
+            zones[i] = zone(i);
         ia.Init();
-        board = new int[14];
         System.arraycopy(ia.board, 0, board, 0, board.length);
-        resize(400, 300);
-        if (!isProgram)
-            getAppletContext().showStatus(Constants.COPYRIGHT);
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                clic(e.getX(), e.getY());
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                relache();
+            }
+        });
     }
 
     /**
-     * Pictures loading.
-     */
-    private void chargerImages() {
-        if (!isProgram)
-            getAppletContext().showStatus("Chargement des images...");
-        MediaTracker tracker = new MediaTracker(this);
-        ecran = Toolkit.getDefaultToolkit().getImage(
-                this.getClass().getClassLoader().getResource(
-                        "net/sweetohm/awele/screen.gif"));
-        marque = Toolkit.getDefaultToolkit().getImage(
-                this.getClass().getClassLoader().getResource(
-                        "net/sweetohm/awele/marque.gif"));
-        ampoule = Toolkit.getDefaultToolkit().getImage(
-                this.getClass().getClassLoader().getResource(
-                        "net/sweetohm/awele/ampoule.gif"));
-        tracker.addImage(ecran, 0);
-        tracker.addImage(marque, 0);
-        tracker.addImage(ampoule, 0);
-        try {
-            tracker.waitForID(0);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+     * Pictures loading, in the format of the screen so that they are drawn
+     * without conversion.
+     */
+    private void chargerImages() throws IOException {
+        // the screen is opaque, so that it is copied without blending
+        ecran = charger("screen.gif", Transparency.OPAQUE);
+        marque = charger("marque.gif", Transparency.BITMASK);
+        ampoule = charger("ampoule.gif", Transparency.BITMASK);
+    }
+
+    /**
+     * Load a picture of the package.
+     */
+    private BufferedImage charger(String name, int transparency) throws IOException {
+        BufferedImage image = ImageIO.read(Main.class.getResource(name));
+        BufferedImage compatible = compatible(image.getWidth(), image.getHeight(), transparency);
+        Graphics2D g = compatible.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return (compatible);
+    }
+
+    /**
+     * Create a picture in the format of the screen, or a plain one without
+     * screen.
+     */
+    private static BufferedImage compatible(int width, int height, int transparency) {
+        if (GraphicsEnvironment.isHeadless())
+            return (new BufferedImage(width, height, transparency == Transparency.OPAQUE ?
+                    BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB));
+        return (GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, height, transparency));
+    }
+
+    /**
+     * Draw the sprites of the digits.
+     */
+    private void dessinerChiffres(Font fonte) {
+        BufferedImage image = compatible(1, 1, Transparency.TRANSLUCENT);
+        Graphics2D g = image.createGraphics();
+        fm = g.getFontMetrics(fonte);
+        g.dispose();
+        for (int i = 0; i < 10; i++) {
+            char c = (char) ('0' + i);
+            chiffres[i] = compatible(Math.max(1, fm.charWidth(c)), fm.getAscent() + fm.getDescent(),
+                    Transparency.TRANSLUCENT);
+            g = chiffres[i].createGraphics();
+            g.setColor(Color.yellow);
+            g.setFont(fonte);
+            g.drawString(String.valueOf(c), 0, fm.getAscent());
+            g.dispose();
         }
     }
 
     /**
-     * Minimum size for applet.
+     * Area of a hole, with the widest number of seeds.
+     */
+    private Rectangle zone(int C) {
+        int largeur = fm.stringWidth("48");
+        Rectangle zone = new Rectangle(Coord[C][0], Coord[C][1],
+                Coord[C][2] - Coord[C][0], Coord[C][3] - Coord[C][1]);
+        zone.add(new Rectangle((Coord[C][0] + Coord[C][2] - largeur) / 2 - 1,
+                ligne(C) - fm.getAscent(), largeur + 2, fm.getAscent() + fm.getDescent()));
+        return (zone);
+    }
+
+    /**
+     * Base line of the number of seeds of a hole.
+     */
+    private int ligne(int C) {
+        return ((Coord[C][1] + Coord[C][3] + fm.getHeight() / 2) / 2);
+    }
+
+    /**
+     * Minimum size for panel.
      */
     public Dimension getMinimumSize() {
-        return new Dimension(400, 300);
+        return (new Dimension(WIDTH, HEIGHT));
     }
 
     /**
-     * Preferred size for applet.
+     * Preferred size for panel.
      */
     public Dimension getPreferredSize() {
-        return new Dimension(400, 300);
+        return (new Dimension(WIDTH, HEIGHT));
+    }
+
+    /**
+     * Show a board, repainting the holes that changed. Called on the event
+     * dispatch thread.
+     *
+     * @param nouveau The board to show
+     */
+    private void afficher(int[] nouveau) {
+        for (int i = 0; i < 14; i++) {
+            if (board[i] != nouveau[i]) {
+                board[i] = nouveau[i];
+                repaint(zones[i]);
+            }
+        }
+    }
+
+    /**
+     * Show the board of the engine.
+     */
+    private void afficher() {
+        afficher(ia.board.clone());
+    }
+
+    /**
+     * Set the light bulb, repainting it.
+     */
+    private void setPensif(boolean pensif) {
+        this.pensif = pensif;
+        repaint(AMPOULE_X, AMPOULE_Y, ampoule.getWidth(), ampoule.getHeight());
+    }
+
+    /**
+     * Set the level, repainting its marks.
+     */
+    private void setLevel(int level) {
+        ia.level = level;
+        Rectangle zone = new Rectangle(Coord[16][0], Coord[16][1], 0, 0);
+        zone.add(Coord[21][2], Coord[21][3]);
+        repaint(zone);
     }
 
     /**
-     * Draw the board.
+     * Draw the board, only in the area to repaint.
      */
-    private void dessinerEcran() {
-        Graphics g = image.getGraphics();
-        g.drawImage(ecran, 0, 0, this);
+    protected void paintComponent(Graphics g) {
+        long debut = System.nanoTime();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, WIDTH, HEIGHT);
+        g.drawImage(ecran, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+                clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, null);
         for (int i = 0; i < 14; i++)
-            if (board[i] != 0)
+            if (board[i] != 0 && zones[i].intersects(clip))
                 dessinerCase(i, g);
         for (int i = 0; i < ia.level / 2; i++)
             imageCentree(Coord[i + 16], marque, g);
         if (pensif)
-            g.drawImage(ampoule, 180, 205, this);
+            g.drawImage(ampoule, AMPOULE_X, AMPOULE_Y, null);
+        if (TIMING)
+            timing(debut, clip);
     }
 
     /**
-     * Print a board hole.
+     * Print the time of a paint, and of the start-up for the first one.
      */
-    private void dessinerCase(int C, Graphics g) {
-        int X, Y;
-        g.setColor(Color.yellow);
-        g.setFont(fonte);
-        String S = String.valueOf(board[C]);
-        X = (Coord[C][0] + Coord[C][2] - fm.stringWidth(S)) / 2;
-        Y = (Coord[C][1] + Coord[C][3] + fm.getHeight() / 2) / 2;
-        g.drawString(S, X, Y);
+    private void timing(long debut, Rectangle clip) {
+        long micros = (System.nanoTime() - debut) / 1000;
+        if (premier) {
+            premier = false;
+            System.err.println("start-up: " + (System.currentTimeMillis()
+                    - ManagementFactory.getRuntimeMXBean().getStartTime()) + " ms");
+        }
+        System.err.println("repaint: " + micros + " us, " + clip.width + "x" + clip.height);
     }
 
     /**
-     * Print a centered picture.
+     * Print a board hole with the sprites of its digits.
      */
-    private void imageCentree(int[] C, Image I, Graphics g) {
-        g.drawImage(I, (C[0] + C[2] - I.getWidth(this)) / 2, (C[1] + C[3] - I
-                .getHeight(this)) / 2, this);
-    }
-
-    /**
-     * Draw the applet.
-     */
-    public void paint(Graphics g) {
-        if (image == null) {
-            image = createImage(400, 300);
-            MediaTracker tracker = new MediaTracker(this);
-            tracker.addImage(image, 0);
-            try {
-                tracker.waitForID(0);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    private void dessinerCase(int C, Graphics g) {
+        String S = String.valueOf(board[C]);
+        int X = (Coord[C][0] + Coord[C][2] - fm.stringWidth(S)) / 2;
+        int Y = ligne(C) - fm.getAscent();
+        for (int i = 0; i < S.length(); i++) {
+            BufferedImage chiffre = chiffres[S.charAt(i) - '0'];
+            g.drawImage(chiffre, X, Y, null);
+            X += fm.charWidth(S.charAt(i));
         }
-        dessinerEcran();
-        g.drawImage(image, 0, 0, this);
     }
 
     /**
-     * Draw the applet without the background.
+     * Print a centered picture.
      */
-    public void update(Graphics g) {
-        paint(g);
+    private void imageCentree(int[] C, BufferedImage I, Graphics g) {
+        g.drawImage(I, (C[0] + C[2] - I.getWidth()) / 2, (C[1] + C[3] - I.getHeight()) / 2, null);
     }
 
     /**
      * Manage mouse clicks.
      */
-    public boolean mouseDown(Event evt, int x, int y) {
+    private void clic(int x, int y) {
         if (pensif)
-            return true;
+            return;
         int clic = NUL;
         for (int i = 0; i < 22; i++)
             if (x > Coord[i][0] && x < Coord[i][2] && y > Coord[i][1]
@@ -252,12 +404,14 @@ public class Main extends Applet implements Runnable {
             }
         if (clic > 5 && clic < 12) {
             if (ia.isLegal(clic, SUD)) {
+                // replies searched while pondering are kept for this move
+                ia.stopPondering();
                 ia.play(clic, SUD);
-                System.arraycopy(ia.board, 0, board, 0, board.length);
-                repaint();
+                afficher();
                 traitMachine = true;
             }
         } else if (clic == 14) {
+            ia.stopPondering();
             int temp;
             for (int i = 0; i < 6; i++) {
                 temp = ia.board[i];
@@ -267,45 +421,45 @@ public class Main extends Applet implements Runnable {
             temp = ia.board[12];
             ia.board[12] = ia.board[13];
             ia.board[13] = temp;
-            System.arraycopy(ia.board, 0, board, 0, board.length);
-            pensif = false;
-            repaint();
+            afficher();
             traitMachine = true;
         } else if (clic == 15) {
+            ia.stopPondering();
             ia.Init();
-            System.arraycopy(ia.board, 0, board, 0, board.length);
-            pensif = false;
-            repaint();
+            afficher();
         } else if (clic > 15 && clic < 22) {
-            ia.level = (clic - 15) * 2;
-            pensif = false;
-            repaint();
+            ia.stopPondering();
+            setLevel((clic - 15) * 2);
         }
-        return (true);
     }
 
     /**
      * Mouse button is released.
      */
-    public boolean mouseUp(Event ev, int x, int y) {
+    private void relache() {
         if (traitMachine) {
             traitMachine = false;
-            pensif = true;
-            repaint();
-            thread = new Thread(this);
+            setPensif(true);
+            Thread thread = new Thread(this, "awele-engine");
+            thread.setDaemon(true);
             thread.start();
         }
-        return (true);
     }
 
     /**
-     * Thread for computing.
+     * Thread for computing. Once the machine has played, it ponders on
+     * the time of the human. The board is handed to the event dispatch
+     * thread, that does not touch the engine while it computes.
      */
     public void run() {
         ia.play(ia.getMove(NORD), NORD);
-        System.arraycopy(ia.board, 0, board, 0, board.length);
-        pensif = false;
-        repaint();
+        final int[] nouveau = ia.board.clone();
+        ia.startPondering(NORD);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                afficher(nouveau);
+                setPensif(false);
+            }
+        });
     }
 }
-
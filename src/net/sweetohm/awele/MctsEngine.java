@@ -0,0 +1,411 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte-Carlo tree search engine (UCT). Each playout goes down the tree by
+ * the upper confidence bound of the children, expands the leaf it reaches,
+ * plays the game to its end with random moves and counts the result in the
+ * nodes it went through. The move played is the child of the root with the
+ * most visits. The evaluation function is not used.
+ * <p>
+ * Playouts play on a <code>Board</code>, with the rules of the engine and
+ * without allocation. They are lightly guided: with probability
+ * <code>greed</code>, the biggest capture is played if there is one.
+ * <p>
+ * A search runs in the calling thread and <code>threads - 1</code> helper
+ * threads, that search the same tree (tree parallelization): a thread
+ * going through a node counts a lost visit at once (virtual loss), so that
+ * other threads try other nodes until the result is known. Trees are
+ * borrowed from a pool as the contexts of <code>SearchEngine</code>, and
+ * keep the subtree of the position played when the next search of the same
+ * game gets the same tree (the last returned tree is lent first).
+ */
+final class MctsEngine implements Engine {
+
+    /**
+     * Visit in the stats of a node
+     */
+    private static final long VISIT = 1L << 32;
+    /**
+     * Maximum number of half plays of a playout
+     */
+    private static final int PLAYOUT_PLIES = Tournament.MAX_PLIES;
+    /**
+     * Number of playouts between checks of the time
+     */
+    private static final int CHECK_INTERVAL = 64;
+    /**
+     * Number of playouts per move without time limit
+     */
+    public int playouts = 20000;
+    /**
+     * Soft and hard time limits in milliseconds: the search stops at the
+     * soft limit, or at the hard one if it is lower. With no soft limit, the
+     * search runs <code>playouts</code> playouts
+     */
+    public long softTimeLimit = 0;
+    public long hardTimeLimit = 0;
+    /**
+     * Exploration constant of the upper confidence bound
+     */
+    public double exploration = 0.4;
+    /**
+     * Probability of playing the biggest capture in playouts
+     */
+    public double greed = 0.5;
+    /**
+     * Number of threads searching a tree, all cores by default
+     */
+    public int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Maximum number of nodes of each tree
+     */
+    private final int capacity;
+    /**
+     * Trees not in use, last returned first
+     */
+    private final Deque<MctsTree> pool = new ConcurrentLinkedDeque<MctsTree>();
+    /**
+     * Random generator giving the generators of new trees
+     */
+    private final SplittableRandom seeds = new SplittableRandom();
+    /**
+     * Helper threads, created with the first parallel search
+     */
+    private ExecutorService helpers;
+    /**
+     * CPU time in nanoseconds of helper threads, for the searches of each
+     * calling thread
+     */
+    private final ThreadLocal<long[]> helperCpuTime = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return (new long[1]);
+        }
+    };
+
+    /**
+     * Constructor with default memory.
+     */
+    public MctsEngine() {
+        this(IA.DEFAULT_HASH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param memory Memory of each tree in megabytes
+     */
+    public MctsEngine(int memory) {
+        this.capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                (long) memory * 1024 * 1024 / MctsTree.NODE_SIZE);
+    }
+
+    public int getMove(int[] board, int side) {
+        return (getMove(board, side, softTimeLimit, hardTimeLimit));
+    }
+
+    public int getMove(int[] board, int side, long soft, long hard) {
+        long start = System.nanoTime();
+        Board position = new Board();
+        position.set(board);
+        int legal = position.legalMoves(side);
+        if (Integer.bitCount(legal) < 2)
+            return (legal == 0 ? IA.NULL : Integer.numberOfTrailingZeros(legal));
+        long limit = (soft > 0 && hard > 0 ? Math.min(soft, hard) : soft > 0 ? soft : hard);
+        long deadline = (limit > 0 ? start + limit * 1000000L : Long.MAX_VALUE);
+        int count = (soft > 0 ? Integer.MAX_VALUE : playouts);
+        MctsTree tree = acquire();
+        try {
+            if (!tree.reuse(board, side, position))
+                tree.reset(board, side);
+            search(tree, count, deadline);
+            return (tree.bestMove());
+        } finally {
+            pool.push(tree);
+        }
+    }
+
+    public long getHelperCpuTime() {
+        return (helperCpuTime.get()[0]);
+    }
+
+    /**
+     * Run playouts in a tree, in this thread and helpers.
+     */
+    private void search(MctsTree tree, int count, long deadline) {
+        AtomicInteger remaining = new AtomicInteger(count);
+        final AtomicLong cpu = new AtomicLong();
+        Future<?>[] futures = new Future<?>[threads - 1];
+        for (int i = 0; i < futures.length; i++) {
+            final Worker helper = new Worker(tree, remaining, deadline);
+            futures[i] = helpers().submit(new Runnable() {
+                public void run() {
+                    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                    long before = bean.getCurrentThreadCpuTime();
+                    try {
+                        helper.run();
+                    } finally {
+                        cpu.addAndGet(bean.getCurrentThreadCpuTime() - before);
+                    }
+                }
+            });
+        }
+        try {
+            new Worker(tree, remaining, deadline).run();
+        } finally {
+            // the tree goes back to the pool: stop helpers and wait for them
+            remaining.set(0);
+            try {
+                join(futures);
+            } finally {
+                helperCpuTime.get()[0] += cpu.get();
+            }
+        }
+    }
+
+    /**
+     * Wait for all helpers, even if interrupted or if one fails.
+     *
+     * @param futures The helpers
+     */
+    private static void join(Future<?>[] futures) {
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure != null)
+            throw new IllegalStateException(failure);
+    }
+
+    /**
+     * Borrow a tree from the pool, or create one.
+     */
+    private MctsTree acquire() {
+        MctsTree tree = pool.poll();
+        if (tree != null)
+            return (tree);
+        SplittableRandom random;
+        synchronized (this) {
+            random = seeds.split();
+        }
+        return (new MctsTree(capacity, random));
+    }
+
+    /**
+     * @return The executor of helper threads
+     */
+    private synchronized ExecutorService helpers() {
+        if (helpers == null)
+            helpers = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "awele-mcts");
+                    thread.setDaemon(true);
+                    return (thread);
+                }
+            });
+        return (helpers);
+    }
+
+    /**
+     * A thread searching a tree, with its own board and random generator.
+     */
+    private final class Worker {
+
+        private final MctsTree tree;
+        private final AtomicInteger remaining;
+        private final long deadline;
+        private final Board position = new Board();
+        private final SplittableRandom random;
+        /**
+         * Nodes gone through by a playout, below the root
+         */
+        private final int[] path = new int[Board.MAX_PLY];
+        /**
+         * Board to load the position again when the undo stack is full
+         */
+        private final int[] pits = new int[14];
+
+        Worker(MctsTree tree, AtomicInteger remaining, long deadline) {
+            this.tree = tree;
+            this.remaining = remaining;
+            this.deadline = deadline;
+            synchronized (tree) {
+                this.random = tree.random.split();
+            }
+        }
+
+        /**
+         * Run playouts until none remain or the time is over.
+         */
+        void run() {
+            for (int n = 1; remaining.getAndDecrement() > 0; n++) {
+                if (n % CHECK_INTERVAL == 0 && System.nanoTime() >= deadline) {
+                    remaining.set(0);
+                    break;
+                }
+                playout();
+            }
+        }
+
+        /**
+         * Run a playout from the root.
+         */
+        private void playout() {
+            AtomicLongArray stats = tree.stats;
+            position.set(tree.rootBoard);
+            int side = tree.rootSide;
+            int node = 0;
+            int depth = 0;
+            stats.getAndAdd(0, VISIT);
+            while (depth < path.length - 1) {
+                int first = tree.children.get(node);
+                if (first == MctsTree.UNEXPANDED
+                        && tree.children.compareAndSet(node, MctsTree.UNEXPANDED, MctsTree.EXPANDING)) {
+                    tree.expand(node, position.legalMoves(side));
+                    first = tree.children.get(node);
+                }
+                if (first <= 0)
+                    break;
+                node = select(stats, node, first, tree.counts[node]);
+                // virtual loss: a visit without score until the result is known
+                stats.getAndAdd(node, VISIT);
+                position.make(tree.moves[node], side);
+                side = -side;
+                path[depth++] = node;
+            }
+            int result = simulate(side);
+            // the side that played the move to the first node is the root side
+            int mover = tree.rootSide;
+            for (int i = 0; i < depth; i++, mover = -mover)
+                stats.getAndAdd(path[i], 1 + result * mover);
+        }
+
+        /**
+         * Select the child with the best upper confidence bound, an
+         * unvisited child first.
+         */
+        private int select(AtomicLongArray stats, int node, int first, int count) {
+            double log = Math.log(stats.get(node) >>> 32);
+            int best = first;
+            double bestBound = -1;
+            for (int child = first; child < first + count; child++) {
+                long s = stats.get(child);
+                long visits = s >>> 32;
+                if (visits == 0)
+                    return (child);
+                double bound = (s & 0xFFFFFFFFL) / (2.0 * visits)
+                        + exploration * Math.sqrt(log / visits);
+                if (bound > bestBound) {
+                    bestBound = bound;
+                    best = child;
+                }
+            }
+            return (best);
+        }
+
+        /**
+         * Play the game to its end.
+         *
+         * @param side The side to play
+         * @return 1 if north wins, -1 if south wins, 0 for a draw
+         */
+        private int simulate(int side) {
+            int[] board = position.pits;
+            for (int ply = 0; ply < PLAYOUT_PLIES && board[12] <= 24 && board[13] <= 24; ply++) {
+                if (position.ply() == Board.MAX_PLY) {
+                    position.get(pits);
+                    position.set(pits);
+                }
+                int first = (side == IA.NORTH ? 0 : 6);
+                boolean played = false;
+                if (random.nextDouble() < greed) {
+                    int capture = capture(board, first);
+                    played = (capture != IA.NULL && position.make(capture, side));
+                }
+                int candidates = 0;
+                for (int hole = first; hole < first + 6; hole++)
+                    if (board[hole] != 0)
+                        candidates |= 1 << hole;
+                while (!played && candidates != 0) {
+                    int move = candidates;
+                    for (int n = random.nextInt(Integer.bitCount(candidates)); n > 0; n--)
+                        move &= move - 1;
+                    move = Integer.numberOfTrailingZeros(move);
+                    played = position.make(move, side);
+                    candidates &= ~(1 << move);
+                }
+                if (!played)
+                    break;
+                side = -side;
+            }
+            return (Integer.signum(board[12] - board[13]));
+        }
+    }
+
+    /**
+     * Find the capture of the most seeds in the hole where the last seed
+     * falls, see <code>Search.isCapture()</code>.
+     *
+     * @return The move or <code>IA.NULL</code> if no move captures
+     */
+    private static int capture(int[] board, int first) {
+        int best = IA.NULL;
+        int most = 0;
+        for (int move = first; move < first + 6; move++) {
+            int seeds = board[move];
+            if (seeds == 0)
+                continue;
+            int last = (move + seeds % 11) % 12;
+            if ((last < 6) == (move < 6))
+                continue;
+            int after = board[last] + seeds / 11 + 1;
+            if ((after == 2 || after == 3) && after > most) {
+                most = after;
+                best = move;
+            }
+        }
+        return (best);
+    }
+}
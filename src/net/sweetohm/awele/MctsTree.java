@@ -0,0 +1,267 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tree of a Monte-Carlo tree search, in a pool of nodes allocated once, so
+ * that its memory is bounded. A node is an index in arrays:
+ * <ul>
+ * <li><code>stats</code>: number of visits in the high 32 bits and score in
+ * the low 32 bits (2 per win, 1 per draw) for the side that played the move
+ * leading to the node. Both are updated with a single atomic addition, so
+ * that threads search the same tree without locks,
+ * <li><code>children</code>: index of the first child (children of a node
+ * are contiguous), <code>UNEXPANDED</code>, <code>EXPANDING</code> while a
+ * thread expands the node or <code>TERMINAL</code> if the game is over,
+ * <li><code>moves</code> and <code>counts</code>: the move leading to the
+ * node and its number of children.
+ * </ul>
+ * The root is node 0. When the tree is full, leaves are not expanded any
+ * more, but playouts go on from them.
+ * <p>
+ * Between moves of a game, the subtree of the new position is kept: it is
+ * copied to the spare arrays, which then become the tree. The pool thus
+ * holds twice the number of nodes.
+ */
+final class MctsTree {
+
+    /**
+     * Values of <code>children</code> for nodes without children
+     */
+    static final int UNEXPANDED = 0;
+    static final int EXPANDING = -1;
+    static final int TERMINAL = -2;
+    /**
+     * Bytes of memory per node, with the spare arrays
+     */
+    static final int NODE_SIZE = 2 * (8 + 4 + 1 + 1);
+    /**
+     * Maximum number of nodes
+     */
+    private final int capacity;
+    /**
+     * Nodes, see above
+     */
+    AtomicLongArray stats;
+    AtomicIntegerArray children;
+    byte[] moves;
+    byte[] counts;
+    /**
+     * Spare arrays, where the tree is copied when reused
+     */
+    private AtomicLongArray spareStats;
+    private AtomicIntegerArray spareChildren;
+    private byte[] spareMoves;
+    private byte[] spareCounts;
+    /**
+     * Number of nodes in use
+     */
+    final AtomicInteger size = new AtomicInteger();
+    /**
+     * Tells if a node could not be expanded for lack of room
+     */
+    volatile boolean full;
+    /**
+     * Board and side to move of the root
+     */
+    final int[] rootBoard = new int[14];
+    int rootSide;
+    /**
+     * Random generator of the tree, giving those of the threads searching it
+     */
+    final SplittableRandom random;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Maximum number of nodes
+     * @param random   The random generator
+     */
+    MctsTree(int capacity, SplittableRandom random) {
+        this.capacity = capacity;
+        this.random = random;
+        stats = new AtomicLongArray(capacity);
+        children = new AtomicIntegerArray(capacity);
+        moves = new byte[capacity];
+        counts = new byte[capacity];
+        spareStats = new AtomicLongArray(capacity);
+        spareChildren = new AtomicIntegerArray(capacity);
+        spareMoves = new byte[capacity];
+        spareCounts = new byte[capacity];
+    }
+
+    /**
+     * Start a new tree.
+     *
+     * @param board The board of the root
+     * @param side  The side to play at the root
+     */
+    void reset(int[] board, int side) {
+        System.arraycopy(board, 0, rootBoard, 0, 14);
+        rootSide = side;
+        clear(0, IA.NULL);
+        size.set(1);
+        full = false;
+    }
+
+    /**
+     * Keep the subtree of a position reached from the root in at most two
+     * half plays.
+     *
+     * @param board    The board of the new root
+     * @param side     The side to play at the new root
+     * @param position A board to play moves on
+     * @return A <code>boolean</code> that tells if the subtree was found
+     */
+    boolean reuse(int[] board, int side, Board position) {
+        if (size.get() == 0)
+            return (false);
+        position.set(rootBoard);
+        int node = find(0, 0, rootSide, board, side, position);
+        if (node < 0)
+            return (false);
+        if (node > 0)
+            compact(node);
+        System.arraycopy(board, 0, rootBoard, 0, 14);
+        rootSide = side;
+        full = false;
+        return (true);
+    }
+
+    /**
+     * Look for the node of a position in the subtree of a node, at most two
+     * half plays below the root.
+     *
+     * @return The node or -1 if not found
+     */
+    private int find(int node, int depth, int toPlay, int[] board, int side, Board position) {
+        if (toPlay == side && Arrays.equals(position.pits, board))
+            return (node);
+        int first = children.get(node);
+        if (depth == 2 || first <= 0)
+            return (-1);
+        for (int child = first; child < first + counts[node]; child++) {
+            position.make(moves[child], toPlay);
+            int found = find(child, depth + 1, -toPlay, board, side, position);
+            position.unmake();
+            if (found >= 0)
+                return (found);
+        }
+        return (-1);
+    }
+
+    /**
+     * Copy the subtree of a node to the spare arrays, breadth first, and
+     * swap them with the tree. Until a copy is visited, its children entry
+     * holds the index of its original.
+     */
+    private void compact(int root) {
+        spareStats.set(0, stats.get(root));
+        spareMoves[0] = (byte) IA.NULL;
+        spareChildren.set(0, root);
+        int next = 1;
+        for (int copy = 0; copy < next; copy++) {
+            int node = spareChildren.get(copy);
+            int first = children.get(node);
+            int count = counts[node];
+            spareCounts[copy] = (byte) count;
+            if (first <= 0) {
+                spareChildren.set(copy, first == TERMINAL ? TERMINAL : UNEXPANDED);
+                continue;
+            }
+            spareChildren.set(copy, next);
+            for (int i = 0; i < count; i++) {
+                spareStats.set(next + i, stats.get(first + i));
+                spareMoves[next + i] = moves[first + i];
+                spareChildren.set(next + i, first + i);
+            }
+            next += count;
+        }
+        AtomicLongArray statsSwap = stats;
+        stats = spareStats;
+        spareStats = statsSwap;
+        AtomicIntegerArray childrenSwap = children;
+        children = spareChildren;
+        spareChildren = childrenSwap;
+        byte[] movesSwap = moves;
+        moves = spareMoves;
+        spareMoves = movesSwap;
+        byte[] countsSwap = counts;
+        counts = spareCounts;
+        spareCounts = countsSwap;
+        size.set(next);
+    }
+
+    /**
+     * Expand a node: create its children for the legal moves of a side.
+     * The caller must have set the node to <code>EXPANDING</code>.
+     *
+     * @param node  The node
+     * @param legal The legal moves as a bitmask
+     */
+    void expand(int node, int legal) {
+        if (legal == 0) {
+            children.set(node, TERMINAL);
+            return;
+        }
+        int count = Integer.bitCount(legal);
+        int first = (full ? capacity : size.getAndAdd(count));
+        if (first + count > capacity) {
+            full = true;
+            children.set(node, UNEXPANDED);
+            return;
+        }
+        for (int i = first; legal != 0; i++, legal &= legal - 1)
+            clear(i, Integer.numberOfTrailingZeros(legal));
+        counts[node] = (byte) count;
+        // publishes the children to other threads
+        children.set(node, first);
+    }
+
+    /**
+     * Clear a node.
+     */
+    private void clear(int node, int move) {
+        stats.set(node, 0);
+        children.set(node, UNEXPANDED);
+        moves[node] = (byte) move;
+        counts[node] = 0;
+    }
+
+    /**
+     * @return The move of the child of the root with the most visits, or
+     * <code>IA.NULL</code> if the root is not expanded
+     */
+    int bestMove() {
+        int first = children.get(0);
+        int best = IA.NULL;
+        long visits = -1;
+        for (int child = first; first > 0 && child < first + counts[0]; child++) {
+            long v = stats.get(child) >>> 32;
+            if (v > visits) {
+                visits = v;
+                best = moves[child];
+            }
+        }
+        return (best);
+    }
+}
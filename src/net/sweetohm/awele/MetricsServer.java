@@ -0,0 +1,112 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * HTTP server giving engine metrics in the Prometheus text format at
+ * <code>/metrics</code>. It listens on the loopback address only, so that
+ * metrics are scraped by a local agent.
+ */
+final class MetricsServer {
+
+    /**
+     * Content type of the Prometheus text format
+     */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * HTTP server
+     */
+    private final HttpServer server;
+    /**
+     * Metrics to give
+     */
+    private final List<EngineMetrics> metrics = new CopyOnWriteArrayList<EngineMetrics>();
+
+    /**
+     * Start a server.
+     *
+     * @param port The port, 0 for any free port
+     * @throws IOException If the port can't be bound
+     */
+    public MetricsServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if (!"GET".equals(exchange.getRequestMethod())) {
+                        exchange.sendResponseHeaders(405, -1);
+                        return;
+                    }
+                    StringBuilder text = new StringBuilder();
+                    EngineMetrics.writePrometheus(metrics, text);
+                    byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Add metrics to give.
+     *
+     * @param engine The metrics of an engine
+     */
+    public void add(EngineMetrics engine) {
+        metrics.add(engine);
+    }
+
+    /**
+     * Remove metrics.
+     *
+     * @param engine The metrics of an engine
+     */
+    public void remove(EngineMetrics engine) {
+        metrics.remove(engine);
+    }
+
+    /**
+     * @return The port the server listens on
+     */
+    public int getPort() {
+        return (server.getAddress().getPort());
+    }
+
+    /**
+     * Stop the server.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+}
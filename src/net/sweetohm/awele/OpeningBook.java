@@ -0,0 +1,354 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Opening book. For every position reachable from the initial board in a
+ * given number of half plays (whichever side starts), it gives the note of
+ * each move, found by a deep search.
+ * <p>
+ * The file holds a 32 bytes header (magic, number of half plays, search
+ * depth, number of positions and number of slots) followed by a hash table
+ * of 32 bytes slots with open addressing. A slot holds the key of the
+ * position (see <code>Board.key()</code>) and the notes of the six moves of
+ * the side to move, <code>NO_NOTE</code> for illegal moves. An empty slot
+ * has a key of 0. The file is memory mapped, so that all the engines of a
+ * host share the same pages.
+ */
+final class OpeningBook {
+
+    /**
+     * Note of an illegal move
+     */
+    public static final int NO_NOTE = Integer.MIN_VALUE;
+    /**
+     * File magic number ("AWOB")
+     */
+    private static final int MAGIC = 0x41574F42;
+    /**
+     * Header size in bytes
+     */
+    private static final int HEADER = 32;
+    /**
+     * Slot size in bytes
+     */
+    private static final int SLOT = 32;
+    /**
+     * Size of the transposition table of each builder thread in megabytes
+     */
+    private static final int BUILDER_HASH_SIZE = 64;
+    /**
+     * Mapped file
+     */
+    private final MappedByteBuffer buffer;
+    /**
+     * Mask for slot index
+     */
+    private final int mask;
+    /**
+     * Number of positions
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped file
+     */
+    private OpeningBook(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(12);
+        this.mask = buffer.getInt(16) - 1;
+    }
+
+    /**
+     * Open a book.
+     *
+     * @param file The book file
+     * @return The book
+     * @throws IOException If the file can't be read or is not valid
+     */
+    public static OpeningBook open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int slots = buffer.getInt(16);
+            if (buffer.getInt(0) != MAGIC || Integer.bitCount(slots) != 1
+                    || channel.size() != HEADER + (long) slots * SLOT)
+                throw new IOException("Invalid opening book file " + file);
+            return (new OpeningBook(buffer));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return The number of positions in the book
+     */
+    public int size() {
+        return (size);
+    }
+
+    /**
+     * Look for the notes of the moves of a position.
+     *
+     * @param key   The key of the position, see <code>Board.key()</code>
+     * @param notes Array of 6 notes to fill, for holes of the side to move
+     * @return A <code>boolean</code> that tells if the position was found
+     */
+    public boolean probe(long key, int[] notes) {
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            int offset = HEADER + slot * SLOT;
+            long k = buffer.getLong(offset);
+            if (k == 0)
+                return (false);
+            if (k == key) {
+                for (int i = 0; i < 6; i++)
+                    notes[i] = buffer.getInt(offset + 8 + 4 * i);
+                return (true);
+            }
+        }
+    }
+
+    /**
+     * Choose a move in the book. Moves whose note is within a margin of the
+     * best one are chosen randomly, with a weight that decreases linearly
+     * with the distance to the best note. With a margin of 0, moves with the
+     * best note are equally likely.
+     *
+     * @param key    The key of the position, see <code>Board.key()</code>
+     * @param side   The side to move
+     * @param margin The margin in notes
+     * @param random The random generator
+     * @return The move or <code>IA.NULL</code> if the position is not in the
+     * book
+     */
+    public int choose(long key, int side, int margin, SplittableRandom random) {
+        int[] notes = new int[6];
+        if (!probe(key, notes))
+            return (IA.NULL);
+        int best = NO_NOTE;
+        for (int i = 0; i < 6; i++)
+            best = Math.max(best, notes[i]);
+        if (best == NO_NOTE)
+            return (IA.NULL);
+        long total = 0;
+        for (int i = 0; i < 6; i++)
+            total += weight(notes[i], best, margin);
+        long pick = (long) (random.nextDouble() * total);
+        int first = (side == IA.NORTH ? 0 : 6);
+        for (int i = 0; i < 6; i++) {
+            pick -= weight(notes[i], best, margin);
+            if (pick < 0)
+                return (first + i);
+        }
+        return (IA.NULL);
+    }
+
+    /**
+     * Weight of a move for random choice.
+     */
+    private static long weight(int note, int best, int margin) {
+        if (note == NO_NOTE || best - note > margin)
+            return (0);
+        return (margin + 1 - (best - note));
+    }
+
+    /**
+     * Build a book.
+     *
+     * @param file    The book file
+     * @param plies   Number of half plays from the initial board
+     * @param depth   Search depth for each move, in half plays
+     * @param threads The number of threads
+     * @throws Exception If the file can't be written
+     */
+    public static void build(File file, int plies, final int depth, int threads) throws Exception {
+        // list positions with the side to move, without duplicates
+        List<int[]> positions = new ArrayList<int[]>();
+        List<Integer> sides = new ArrayList<Integer>();
+        Map<Long, Integer> seen = new HashMap<Long, Integer>();
+        Board board = new Board();
+        IA ia = new IA();
+        ia.Init();
+        for (int side = IA.NORTH; side >= IA.SOUTH; side -= 2) {
+            board.set(ia.board);
+            expand(board, side, plies, positions, sides, seen);
+        }
+        final long[] keys = new long[positions.size()];
+        final int[][] notes = new int[positions.size()][];
+        // search positions in parallel, each thread with its own table
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            final List<int[]> todo = positions;
+            final List<Integer> todoSides = sides;
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                final int count = threads;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        TranspositionTable table = new TranspositionTable(BUILDER_HASH_SIZE);
+                        Search search = new Search(table);
+                        Board position = new Board();
+                        Eval eval = new Eval();
+                        for (int i = thread; i < todo.size(); i += count) {
+                            int side = todoSides.get(i);
+                            position.set(todo.get(i));
+                            keys[i] = position.key(side);
+                            notes[i] = notes(position, side, depth, search, table, eval);
+                        }
+                        return (null);
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        write(file, plies, depth, keys, notes);
+    }
+
+    /**
+     * List positions reachable in a number of half plays, with legal moves.
+     * A position reached again is expanded again only if more half plays
+     * remain.
+     */
+    private static void expand(Board board, int side, int plies, List<int[]> positions,
+                               List<Integer> sides, Map<Long, Integer> seen) {
+        int moves = board.legalMoves(side);
+        if (moves == 0)
+            return;
+        Integer remaining = seen.put(board.key(side), plies);
+        if (remaining == null) {
+            int[] pits = new int[14];
+            board.get(pits);
+            positions.add(pits);
+            sides.add(side);
+        } else if (remaining >= plies) {
+            seen.put(board.key(side), remaining);
+            return;
+        }
+        if (plies == 0)
+            return;
+        for (int move = 0; move < 12; move++) {
+            if ((moves & (1 << move)) != 0) {
+                board.make(move, side);
+                expand(board, -side, plies - 1, positions, sides, seen);
+                board.unmake();
+            }
+        }
+    }
+
+    /**
+     * Compute the notes of the moves of a position. Each move is searched
+     * separately, so that all notes are exact.
+     */
+    private static int[] notes(Board position, int side, int depth, Search search,
+                               TranspositionTable table, Eval eval) {
+        int[] notes = new int[6];
+        int[] pits = new int[14];
+        int first = (side == IA.NORTH ? 0 : 6);
+        for (int i = 0; i < 6; i++) {
+            notes[i] = NO_NOTE;
+            if (!position.make(first + i, side))
+                continue;
+            position.get(pits);
+            int moves = position.legalMoves(-side);
+            if (moves == 0)
+                notes[i] = -eval.endEvaluation(pits, -side);
+            else {
+                table.newSearch();
+                search.setup(pits, -side, moves, 0);
+                search.think(1, depth - 1, 0, 0, Long.MAX_VALUE);
+                notes[i] = -search.bestNote;
+            }
+            position.unmake();
+        }
+        return (notes);
+    }
+
+    /**
+     * Write a book, through a temporary file, so that a complete file is
+     * always valid.
+     */
+    private static void write(File file, int plies, int depth, long[] keys, int[][] notes)
+            throws IOException {
+        int slots = Integer.highestOneBit(Math.max(1, keys.length * 2 - 1)) * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + slots * SLOT);
+        buffer.putInt(0, MAGIC).putInt(4, plies).putInt(8, depth)
+                .putInt(12, keys.length).putInt(16, slots);
+        for (int i = 0; i < keys.length; i++) {
+            int slot = (int) keys[i] & (slots - 1);
+            while (buffer.getLong(HEADER + slot * SLOT) != 0)
+                slot = (slot + 1) & (slots - 1);
+            int offset = HEADER + slot * SLOT;
+            buffer.putLong(offset, keys[i]);
+            for (int j = 0; j < 6; j++)
+                buffer.putInt(offset + 8 + 4 * j, notes[i][j]);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Build a book.
+     *
+     * @param args File, number of half plays, search depth and number of
+     *             threads
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: OpeningBook file plies depth [threads]");
+            System.exit(1);
+        }
+        int threads = (args.length > 3 ? Integer.parseInt(args[3]) :
+                Runtime.getRuntime().availableProcessors());
+        long start = System.currentTimeMillis();
+        build(new File(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), threads);
+        OpeningBook book = open(new File(args[0]));
+        System.out.println(book.size() + " positions in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+}
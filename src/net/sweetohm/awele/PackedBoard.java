@@ -0,0 +1,270 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Immutable board packed in two longs, one per side. Each long holds the six
+ * holes of the side in bytes 0 to 5 (hole 0 or 6 in byte 0) and the store of
+ * the side in byte 6. As there are 48 seeds, a byte never overflows, so that
+ * seeds can be sown in all holes of a side with a single addition, taken
+ * from tables computed once for each hole and number of seeds.
+ * <p>
+ * Instances are values: they are compared with <code>equals()</code>, are
+ * cheap to store in hash tables and files, and never change.
+ */
+final class PackedBoard {
+
+    /**
+     * One in each hole byte
+     */
+    private static final long ONES = 0x0000010101010101L;
+    /**
+     * Mask for hole bytes
+     */
+    private static final long HOLES = 0x0000FFFFFFFFFFFFL;
+    /**
+     * Low 7 bits of each hole byte
+     */
+    private static final long LOW7 = 0x00007F7F7F7F7F7FL;
+    /**
+     * High bit of each hole byte
+     */
+    private static final long HIGH = 0x0000808080808080L;
+    /**
+     * Shift for the store byte
+     */
+    private static final int STORE = 48;
+    /**
+     * Number of seed counts of a hole in tables, from 0 to 48
+     */
+    private static final int SEEDS = 49;
+    /**
+     * Seeds added to the holes of the side playing and of the other side,
+     * per <code>lane * SEEDS + seeds</code>
+     */
+    private static final long[] SOW_MINE = new long[6 * SEEDS];
+    private static final long[] SOW_OTHER = new long[6 * SEEDS];
+    /**
+     * Last hole sown relative to the other side (0 to 5), or -1 if it is
+     * on the side playing, per <code>lane * SEEDS + seeds</code>
+     */
+    private static final int[] SOW_LAST = new int[6 * SEEDS];
+    /**
+     * Initial board
+     */
+    public static final PackedBoard INITIAL = new PackedBoard(4 * ONES, 4 * ONES);
+    /**
+     * North side holes and store
+     */
+    public final long north;
+    /**
+     * South side holes and store
+     */
+    public final long south;
+
+    static {
+        for (int lane = 0; lane < 6; lane++) {
+            for (int seeds = 1; seeds < SEEDS; seeds++) {
+                int index = lane * SEEDS + seeds;
+                for (int i = 1; i < 12; i++) {
+                    long added = seeds / 11 + (i > seeds % 11 ? 0 : 1);
+                    int hole = (lane + i) % 12;
+                    if (hole < 6)
+                        SOW_MINE[index] += added << (8 * hole);
+                    else
+                        SOW_OTHER[index] += added << (8 * (hole - 6));
+                }
+                SOW_LAST[index] = (lane + seeds % 11) % 12 - 6;
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param north North side holes and store
+     * @param south South side holes and store
+     */
+    PackedBoard(long north, long south) {
+        this.north = north;
+        this.south = south;
+    }
+
+    /**
+     * Pack a board.
+     *
+     * @param board The board as an <code>int[]</code>
+     * @return The packed board
+     */
+    public static PackedBoard pack(int[] board) {
+        long north = (long) board[12] << STORE;
+        long south = (long) board[13] << STORE;
+        for (int i = 0; i < 6; i++) {
+            north |= (long) board[i] << (8 * i);
+            south |= (long) board[i + 6] << (8 * i);
+        }
+        return (new PackedBoard(north, south));
+    }
+
+    /**
+     * Unpack the board.
+     *
+     * @param board The <code>int[]</code> to unpack the board into
+     */
+    public void unpack(int[] board) {
+        for (int i = 0; i < 6; i++) {
+            board[i] = (int) (north >>> (8 * i)) & 0xFF;
+            board[i + 6] = (int) (south >>> (8 * i)) & 0xFF;
+        }
+        board[12] = (int) (north >>> STORE) & 0xFF;
+        board[13] = (int) (south >>> STORE) & 0xFF;
+    }
+
+    /**
+     * Get the number of seeds in a hole or store.
+     *
+     * @param slot The hole (0 to 11) or store (12 or 13)
+     * @return The number of seeds
+     */
+    public int get(int slot) {
+        if (slot >= 12)
+            return ((int) ((slot == 12 ? north : south) >>> STORE) & 0xFF);
+        return ((int) ((slot < 6 ? north : south) >>> (8 * (slot % 6))) & 0xFF);
+    }
+
+    /**
+     * Count seeds in the holes of a side.
+     *
+     * @param side The side
+     * @return The number of seeds
+     */
+    public int seeds(int side) {
+        return (sum((side == IA.NORTH ? north : south) & HOLES));
+    }
+
+    /**
+     * Sum of the bytes of a long, if lower than 256.
+     */
+    private static int sum(long bytes) {
+        return ((int) ((bytes * 0x0101010101010101L) >>> 56));
+    }
+
+    /**
+     * Sow the seeds of a hole in the holes of the other side and capture.
+     *
+     * @param holes The holes of the other side
+     * @param index The hole played, relative to its side (0 to 5), times
+     *              <code>SEEDS</code> plus the number of seeds in it
+     * @return The holes of the other side after the move
+     */
+    private static long sowOther(long holes, int index) {
+        holes += SOW_OTHER[index];
+        int last = SOW_LAST[index];
+        if (last < 0)
+            return (holes);
+        // bytes with 2 or 3 seeds have a high bit set in candidates
+        long y = (holes | ONES) ^ (3 * ONES);
+        long candidates = ~(((y & LOW7) + LOW7) | y) & HIGH;
+        long below = (1L << (8 * (last + 1))) - 1;
+        if ((candidates & (0x80L << (8 * last))) == 0)
+            return (holes);
+        long others = ~candidates & HIGH & below;
+        int firstCaptured = (others == 0 ? 0 : (63 - Long.numberOfLeadingZeros(others)) / 8 + 1);
+        long captured = below & ~((1L << (8 * firstCaptured)) - 1);
+        return (holes & ~captured);
+    }
+
+    /**
+     * Play a move.
+     *
+     * @param move The move to play
+     * @param side The side to play
+     * @return The board after the move or <code>null</code> if the move is illegal
+     */
+    public PackedBoard play(int move, int side) {
+        long mine = (side == IA.NORTH ? north : south);
+        long other = (side == IA.NORTH ? south : north);
+        int lane = move - (side == IA.NORTH ? 0 : 6);
+        if (lane < 0 || lane > 5)
+            return (null);
+        int seeds = (int) (mine >>> (8 * lane)) & 0xFF;
+        if (seeds == 0)
+            return (null);
+        int index = lane * SEEDS + seeds;
+        long after = sowOther(other, index);
+        if ((after & HOLES) == 0)
+            return (null);
+        int captured = sum((other + SOW_OTHER[index]) & HOLES) - sum(after & HOLES);
+        mine += SOW_MINE[index];
+        mine &= ~(0xFFL << (8 * lane));
+        mine += (long) captured << STORE;
+        return (side == IA.NORTH ? new PackedBoard(mine, after) :
+                new PackedBoard(after, mine));
+    }
+
+    /**
+     * Compute legal moves of a side.
+     *
+     * @param side The side to play
+     * @return A bitmask with bit <i>n</i> set if hole <i>n</i> is a legal move
+     */
+    public int legalMoves(int side) {
+        long mine = (side == IA.NORTH ? north : south);
+        long other = (side == IA.NORTH ? south : north);
+        int first = (side == IA.NORTH ? 0 : 6);
+        int mask = 0;
+        for (int lane = 0; lane < 6; lane++) {
+            int seeds = (int) (mine >>> (8 * lane)) & 0xFF;
+            if (seeds != 0 && (sowOther(other, lane * SEEDS + seeds) & HOLES) != 0)
+                mask |= 1 << (first + lane);
+        }
+        return (mask);
+    }
+
+    /**
+     * @return A 64 bits hash of the board
+     */
+    public long hash() {
+        long z = north * 0x9E3779B97F4A7C15L + south;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31));
+    }
+
+    public boolean equals(Object object) {
+        if (!(object instanceof PackedBoard))
+            return (false);
+        PackedBoard other = (PackedBoard) object;
+        return (north == other.north && south == other.south);
+    }
+
+    public int hashCode() {
+        return ((int) hash());
+    }
+
+    /**
+     * @return The board as 14 numbers: holes 0 to 11 then the stores
+     */
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 14; i++) {
+            if (i > 0)
+                buffer.append(' ');
+            buffer.append(get(i));
+        }
+        return (buffer.toString());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Perft: count the leaf nodes of the tree of legal moves to a given depth.
+ * Positions where the game ends before the depth is reached are not
+ * counted. Counts of a position depend only on the rules, so that they
+ * check the move generator after any change, and the time they take
+ * measures its speed without evaluation.
+ * <p>
+ * Usage: <code>Perft [-divide] [-packed] [-south] depth [14 seeds]</code>
+ * where <code>-divide</code> prints counts per root move,
+ * <code>-packed</code> uses <code>PackedBoard</code> instead of
+ * <code>Board</code>, <code>-south</code> makes south play first and the
+ * board is given as holes 0 to 11 then the stores (initial board by
+ * default). <code>Perft -check</code> compares counts of the initial board
+ * to the known ones, with both boards.
+ */
+final class Perft {
+
+    /**
+     * Known counts of the initial board, from depth 0, with either side to
+     * move. They match the rules of the original <code>IA.play()</code>.
+     * Deeper counts are 91558687 at depth 11 and 460003403 at depth 12.
+     */
+    static final long[] INITIAL_COUNTS = {
+            1L, 6L, 36L, 190L, 1014L, 5219L, 27332L, 139157L, 711414L,
+            3592872L, 18137964L};
+
+    /**
+     * Count leaf nodes.
+     *
+     * @param board The board
+     * @param side  The side to move
+     * @param depth The depth in half plays
+     * @return The number of leaf nodes
+     */
+    static long perft(Board board, int side, int depth) {
+        if (depth == 0)
+            return (1);
+        int first = (side == IA.NORTH ? 0 : 6);
+        long nodes = 0;
+        for (int move = first; move < first + 6; move++) {
+            if (board.make(move, side)) {
+                nodes += (depth == 1 ? 1 : perft(board, -side, depth - 1));
+                board.unmake();
+            }
+        }
+        return (nodes);
+    }
+
+    /**
+     * Count leaf nodes with packed boards.
+     *
+     * @param board The packed board
+     * @param side  The side to move
+     * @param depth The depth in half plays
+     * @return The number of leaf nodes
+     */
+    static long perft(PackedBoard board, int side, int depth) {
+        if (depth == 0)
+            return (1);
+        if (depth == 1)
+            return (Integer.bitCount(board.legalMoves(side)));
+        int first = (side == IA.NORTH ? 0 : 6);
+        long nodes = 0;
+        for (int move = first; move < first + 6; move++) {
+            PackedBoard next = board.play(move, side);
+            if (next != null)
+                nodes += perft(next, -side, depth - 1);
+        }
+        return (nodes);
+    }
+
+    /**
+     * Count leaf nodes, printing counts per root move if asked.
+     */
+    private static long run(int[] pits, int side, int depth, boolean packed, boolean divide) {
+        Board board = new Board();
+        board.set(pits);
+        PackedBoard start = PackedBoard.pack(pits);
+        if (!divide || depth == 0)
+            return (packed ? perft(start, side, depth) : perft(board, side, depth));
+        int first = (side == IA.NORTH ? 0 : 6);
+        long nodes = 0;
+        for (int move = first; move < first + 6; move++) {
+            long count;
+            if (packed) {
+                PackedBoard next = start.play(move, side);
+                if (next == null)
+                    continue;
+                count = perft(next, -side, depth - 1);
+            } else {
+                if (!board.make(move, side))
+                    continue;
+                count = perft(board, -side, depth - 1);
+                board.unmake();
+            }
+            System.out.println(move + ": " + count);
+            nodes += count;
+        }
+        return (nodes);
+    }
+
+    /**
+     * Compare counts of the initial board to the known ones.
+     *
+     * @return A <code>boolean</code> that tells if all counts are right
+     */
+    private static boolean check() {
+        IA ia = new IA();
+        ia.Init();
+        boolean ok = true;
+        for (int depth = 0; depth < INITIAL_COUNTS.length; depth++) {
+            for (int side = IA.NORTH; side >= IA.SOUTH; side -= 2) {
+                for (int packed = 0; packed < 2; packed++) {
+                    long nodes = run(ia.board, side, depth, packed == 1, false);
+                    if (nodes != INITIAL_COUNTS[depth]) {
+                        System.out.println("depth " + depth + (side == IA.NORTH ? " north" : " south")
+                                + (packed == 1 ? " packed" : "") + ": " + nodes
+                                + " instead of " + INITIAL_COUNTS[depth]);
+                        ok = false;
+                    }
+                }
+            }
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        return (ok);
+    }
+
+    /**
+     * Run perft from the command line.
+     *
+     * @param args Options, depth and board
+     */
+    public static void main(String[] args) {
+        boolean divide = false;
+        boolean packed = false;
+        int side = IA.NORTH;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-divide"))
+                divide = true;
+            else if (args[i].equals("-packed"))
+                packed = true;
+            else if (args[i].equals("-south"))
+                side = IA.SOUTH;
+            else if (args[i].equals("-check"))
+                System.exit(check() ? 0 : 1);
+            else
+                usage();
+        }
+        if (i >= args.length || (args.length - i - 1 != 0 && args.length - i - 1 != 14))
+            usage();
+        int depth = Integer.parseInt(args[i]);
+        IA ia = new IA();
+        ia.Init();
+        for (int j = 0; j < 14 && i + 1 + j < args.length; j++)
+            ia.board[j] = Integer.parseInt(args[i + 1 + j]);
+        long start = System.nanoTime();
+        long nodes = run(ia.board, side, depth, packed, divide);
+        long time = Math.max(1, System.nanoTime() - start);
+        System.out.println("nodes: " + nodes);
+        System.out.println("time: " + time / 1000000 + " ms");
+        System.out.println("nps: " + nodes * 1000000000L / time);
+    }
+
+    /**
+     * Print usage and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: Perft [-divide] [-packed] [-south] depth [14 seeds]");
+        System.err.println("       Perft -check");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * Line based text protocol to drive the engine without user interface, in
+ * the spirit of UCI. Commands are read on the standard input and answers
+ * written on the standard output, one per line. Holes are numbered as in
+ * <code>IA</code>: 0 to 5 for north, 6 to 11 for south; south moves first
+ * from the initial position.
+ * <ul>
+ * <li><code>awele</code>: answer with <code>id name</code> and
+ * <code>awele ok</code>,
+ * <li><code>isready</code>: answer <code>readyok</code>,
+ * <li><code>new</code>: initial position, south to play, and clear the
+ * transposition table,
+ * <li><code>position start|pits p0 ... p13 [side north|south] [moves m ...]</code>:
+ * set the position, the 14 pits being the 12 holes then the stores of
+ * north and south, and play moves from it,
+ * <li><code>moves m ...</code>: play moves from the current position,
+ * <li><code>level n</code>: search depth in half plays,
+ * <li><code>time soft [hard]</code>: time limits in milliseconds, hard
+ * limit defaults to twice the soft one, <code>time 0</code> to search to
+ * the level,
+ * <li><code>threads n</code>, <code>hash megabytes</code>,
+ * <code>book file</code> and <code>endgame directory seeds</code>: engine
+ * options,
+ * <li><code>go [depth n] [movetime ms] [infinite]</code>: search the
+ * position in the background, writing <code>info depth d score s move m
+ * nodes n nps n time ms</code> at the end of each iteration, then
+ * <code>bestmove m</code> (or <code>bestmove none</code> if the game is
+ * over). The move is not played,
+ * <li><code>stop</code>: stop the search, that writes its best move,
+ * <li><code>show</code>: write the position,
+ * <li><code>quit</code>: exit.
+ * </ul>
+ * Errors are answered with <code>error message</code>. Any command but
+ * <code>isready</code> stops the search first.
+ */
+final class Protocol {
+
+    /**
+     * The engine
+     */
+    private final IA ia = new IA();
+    /**
+     * Where answers are written
+     */
+    private final PrintStream out;
+    /**
+     * Side to play
+     */
+    private int side = IA.SOUTH;
+    /**
+     * Search depth in half plays
+     */
+    private int level = ia.level;
+    /**
+     * Time limits in milliseconds
+     */
+    private long soft;
+    private long hard;
+    /**
+     * Thread running the search or null
+     */
+    private Thread searcher;
+
+    /**
+     * Constructor.
+     *
+     * @param out Where answers are written
+     */
+    Protocol(PrintStream out) {
+        this.out = out;
+        ia.Init();
+        ia.setListener(new SearchListener() {
+            public void iteration(int depth, int note, int move, long nodes, long nanos) {
+                long millis = nanos / 1000000;
+                long nps = (nanos == 0 ? 0 : nodes * 1000000000L / nanos);
+                send("info depth " + depth + " score " + note + " move " + move
+                        + " nodes " + nodes + " nps " + nps + " time " + millis);
+            }
+        });
+    }
+
+    /**
+     * Run commands until <code>quit</code> or the end of input.
+     *
+     * @param in Where commands are read
+     * @throws IOException If commands can't be read
+     */
+    void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].length() == 0)
+                continue;
+            if (words[0].equals("quit"))
+                break;
+            try {
+                execute(words);
+            } catch (IllegalArgumentException e) {
+                send("error " + e.getMessage());
+            }
+        }
+        stop();
+    }
+
+    /**
+     * Execute a command.
+     *
+     * @param words The command and its arguments
+     */
+    private void execute(String[] words) {
+        String command = words[0];
+        if (command.equals("isready")) {
+            send("readyok");
+            return;
+        }
+        stop();
+        if (command.equals("awele")) {
+            send("id name Awele");
+            send("awele ok");
+        } else if (command.equals("new")) {
+            ia.Init();
+            ia.clearHash();
+            side = IA.SOUTH;
+        } else if (command.equals("position"))
+            position(words);
+        else if (command.equals("moves"))
+            play(words, 1);
+        else if (command.equals("level"))
+            level = range(words, 1, 1, IA.MAX_ITERATION_DEPTH);
+        else if (command.equals("time")) {
+            soft = range(words, 1, 0, Integer.MAX_VALUE);
+            hard = (words.length > 2 ? range(words, 2, 0, Integer.MAX_VALUE) : 2 * soft);
+        } else if (command.equals("threads"))
+            ia.setThreads(range(words, 1, 1, 1024));
+        else if (command.equals("hash"))
+            ia.setHashSize(range(words, 1, 1, 1 << 16));
+        else if (command.equals("book"))
+            book(words);
+        else if (command.equals("endgame"))
+            endgame(words);
+        else if (command.equals("go"))
+            go(words);
+        else if (command.equals("show"))
+            show();
+        else if (!command.equals("stop"))
+            throw new IllegalArgumentException("unknown command " + command);
+    }
+
+    /**
+     * Set the position.
+     */
+    private void position(String[] words) {
+        side = position(words, ia.board);
+    }
+
+    /**
+     * Play moves from the current position.
+     */
+    private void play(String[] words, int first) {
+        side = play(words, first, ia.board, side);
+    }
+
+    /**
+     * Parse a <code>position</code> command and set a board. The board is
+     * not modified if the command is not valid.
+     *
+     * @param words The command and its arguments
+     * @param board The board to set
+     * @return The side to play
+     * @throws IllegalArgumentException If the command is not valid
+     */
+    static int position(String[] words, int[] board) {
+        int[] pits = new int[14];
+        int n = 1;
+        if (n < words.length && words[n].equals("start")) {
+            for (int i = 0; i < 12; i++)
+                pits[i] = 4;
+            n++;
+        } else if (n < words.length && words[n].equals("pits")) {
+            int seeds = 0;
+            for (int i = 0; i < 14; i++) {
+                pits[i] = range(words, n + 1 + i, 0, 48);
+                seeds += pits[i];
+            }
+            if (seeds != 48)
+                throw new IllegalArgumentException("position must have 48 seeds");
+            n += 15;
+        } else
+            throw new IllegalArgumentException("position needs start or pits");
+        int side = IA.SOUTH;
+        if (n < words.length && words[n].equals("side")) {
+            side = side(words, n + 1);
+            n += 2;
+        }
+        if (n < words.length) {
+            if (!words[n].equals("moves"))
+                throw new IllegalArgumentException("unexpected " + words[n]);
+            side = play(words, n + 1, pits, side);
+        }
+        System.arraycopy(pits, 0, board, 0, 14);
+        return (side);
+    }
+
+    /**
+     * Play the moves of a command on a board. If a move is illegal, no move
+     * is played.
+     *
+     * @param words The command and its arguments
+     * @param first Index of the first move in <code>words</code>
+     * @param board The board
+     * @param side  The side to play
+     * @return The side to play after the moves
+     * @throws IllegalArgumentException If a move is not valid
+     */
+    static int play(String[] words, int first, int[] board, int side) {
+        int[] pits = board.clone();
+        Board position = new Board();
+        for (int n = first; n < words.length; n++) {
+            int move = range(words, n, 0, 11);
+            // set the board at each move, as the undo stack is bounded
+            position.set(pits);
+            if (!position.make(move, side))
+                throw new IllegalArgumentException("illegal move " + move);
+            position.get(pits);
+            side = -side;
+        }
+        System.arraycopy(pits, 0, board, 0, 14);
+        return (side);
+    }
+
+    /**
+     * Set the opening book.
+     */
+    private void book(String[] words) {
+        if (words.length < 2)
+            throw new IllegalArgumentException("book needs a file or none");
+        if (words[1].equals("none")) {
+            ia.setOpeningBook(null);
+            return;
+        }
+        try {
+            ia.setOpeningBook(OpeningBook.open(new File(words[1])));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Set the endgame database.
+     */
+    private void endgame(String[] words) {
+        if (words.length > 1 && words[1].equals("none")) {
+            ia.setEndgameDatabase(null);
+            return;
+        }
+        if (words.length < 3)
+            throw new IllegalArgumentException("endgame needs a directory and seeds or none");
+        int seeds = range(words, 2, 0, EndgameDatabase.MAX_SEEDS);
+        try {
+            ia.setEndgameDatabase(EndgameDatabase.open(new File(words[1]), seeds));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Start a search in the background.
+     */
+    private void go(String[] words) {
+        ia.level = level;
+        ia.setTimeLimits(soft, hard);
+        for (int n = 1; n < words.length; n++) {
+            if (words[n].equals("depth")) {
+                ia.level = range(words, ++n, 1, IA.MAX_ITERATION_DEPTH);
+                ia.setTimeLimits(0, 0);
+            } else if (words[n].equals("movetime")) {
+                long time = range(words, ++n, 1, Integer.MAX_VALUE);
+                ia.setTimeLimits(time, time);
+            } else if (words[n].equals("infinite")) {
+                ia.level = IA.MAX_ITERATION_DEPTH;
+                ia.setTimeLimits(0, 0);
+            } else
+                throw new IllegalArgumentException("unexpected " + words[n]);
+        }
+        final int toPlay = side;
+        searcher = new Thread(new Runnable() {
+            public void run() {
+                int move = (ia.board[12] > 24 || ia.board[13] > 24 ? IA.NULL : ia.getMove(toPlay));
+                send("bestmove " + (move == IA.NULL ? "none" : String.valueOf(move)));
+            }
+        }, "awele-protocol");
+        searcher.start();
+    }
+
+    /**
+     * Stop the search if any and wait for its best move to be written.
+     * The engine is stopped again until the search thread ends, in case
+     * the search had not started yet.
+     */
+    private void stop() {
+        if (searcher == null)
+            return;
+        try {
+            while (searcher.isAlive()) {
+                ia.stop();
+                searcher.join(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searcher = null;
+    }
+
+    /**
+     * Write the position.
+     */
+    private void show() {
+        StringBuilder line = new StringBuilder("north");
+        for (int i = 5; i >= 0; i--)
+            line.append(' ').append(ia.board[i]);
+        send(line.append(" store ").append(ia.board[12]).toString());
+        line = new StringBuilder("south");
+        for (int i = 6; i < 12; i++)
+            line.append(' ').append(ia.board[i]);
+        send(line.append(" store ").append(ia.board[13]).toString());
+        send("side " + (side == IA.NORTH ? "north" : "south"));
+    }
+
+    /**
+     * Write an answer.
+     */
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    /**
+     * Parse an integer argument within a range.
+     */
+    static int range(String[] words, int n, int min, int max) {
+        if (n >= words.length)
+            throw new IllegalArgumentException(words[0] + " needs more arguments");
+        int value;
+        try {
+            value = Integer.parseInt(words[n]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number " + words[n]);
+        }
+        if (value < min || value > max)
+            throw new IllegalArgumentException(words[n] + " not in " + min + ".." + max);
+        return (value);
+    }
+
+    /**
+     * Parse a side argument.
+     */
+    static int side(String[] words, int n) {
+        if (n < words.length && words[n].equals("north"))
+            return (IA.NORTH);
+        if (n < words.length && words[n].equals("south"))
+            return (IA.SOUTH);
+        throw new IllegalArgumentException("side must be north or south");
+    }
+
+    /**
+     * Run the protocol on standard input and output.
+     */
+    public static void main(String[] args) throws IOException {
+        new Protocol(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+        System.exit(0);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Scalar evaluation of blocks of positions, used when the Vector API is
+ * not available and for the positions left over by vector lanes.
+ */
+final class ScalarBatchEvaluator implements BatchEvaluator {
+
+    /**
+     * DNA of the evaluation function
+     */
+    private final int[] dna;
+
+    /**
+     * Constructor.
+     *
+     * @param dna The DNA, see <code>Eval.DNA</code>
+     */
+    ScalarBatchEvaluator(int[] dna) {
+        this.dna = dna.clone();
+    }
+
+    public void evaluate(EvalBatch batch) {
+        evaluate(batch, 0, batch.size);
+    }
+
+    /**
+     * Evaluate a range of positions of a block.
+     *
+     * @param batch The block
+     * @param from  Index of the first position
+     * @param to    Index after the last position
+     */
+    void evaluate(EvalBatch batch, int from, int to) {
+        int[][] pits = batch.pits;
+        for (int i = from; i < to; i++) {
+            int potential = 0;
+            int mobility = 0;
+            int tactic = 0;
+            int northThreats = 0;
+            int southThreats = 0;
+            int lofts = 0;
+            int dams = 0;
+            for (int side = 0; side < 2; side++) {
+                int sign = (side == 0 ? 1 : -1);
+                int run = 0;
+                int dam = 0;
+                for (int h = 6 * side; h < 6 * side + 6; h++) {
+                    int seeds = pits[h][i];
+                    int target = (h + seeds % 11) % 12;
+                    potential += sign * seeds;
+                    if (seeds != 0)
+                        mobility += sign;
+                    if (h % 6 < 5 && h % 6 + seeds < 6)
+                        tactic += sign;
+                    if (side == 0)
+                        northThreats |= 1 << target;
+                    else
+                        southThreats |= 1 << target;
+                    if (seeds > 11 && seeds < 34 && (target < 6) == (side == 1))
+                        lofts += sign;
+                    run = (seeds < 3 ? run + 1 : 0);
+                    dam = Math.max(dam, run);
+                }
+                dams -= sign * dam;
+            }
+            int threats = Integer.bitCount(northThreats & 0xFC0) - Integer.bitCount(southThreats & 0x3F);
+            int note = (pits[12][i] - pits[13][i]) * dna[0] + potential * dna[1] + mobility * dna[2]
+                    + tactic * dna[3] + threats * dna[4] + lofts * dna[5] + dams * dna[6];
+            batch.notes[i] = (batch.sides[i] == IA.NORTH ? note : -note);
+        }
+    }
+}
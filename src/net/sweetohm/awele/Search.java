@@ -0,0 +1,584 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.SplittableRandom;
+
+/**
+ * A search thread state. It holds everything a search modifies, except the
+ * transposition table that may be shared by several searches running in
+ * parallel (Lazy SMP): searches help each other through the entries they
+ * store in the table.
+ */
+final class Search {
+
+    /**
+     * Score greater than any note
+     */
+    static final int INFINITY = Eval.MAX_NOTE + 1;
+    /**
+     * Ordering scores of the move of the transposition table, of captures
+     * and of killer moves, above any history score
+     */
+    private static final int HASH_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 29;
+    private static final int KILLER_SCORE = 1 << 28;
+    /**
+     * History score above which all history scores are halved
+     */
+    private static final int HISTORY_MAX = 1 << 20;
+    /**
+     * Evaluation function
+     */
+    Eval eval = new Eval();
+    /**
+     * Transposition table, maybe shared with other searches
+     */
+    private final TranspositionTable table;
+    /**
+     * Endgame database or null
+     */
+    EndgameDatabase endgame;
+    /**
+     * Board used for search, with its undo stack
+     */
+    private final Board position = new Board();
+    /**
+     * Side to move
+     */
+    private int side;
+    /**
+     * Number of nodes searched
+     */
+    long nodes;
+    /**
+     * Depth of the last completed iteration
+     */
+    int depthReached;
+    /**
+     * Note of the best move of the last completed iteration
+     */
+    int bestNote;
+    /**
+     * Time at which the search must be aborted (see <code>System.nanoTime()</code>)
+     */
+    private long deadline;
+    /**
+     * Tells if the search may be aborted (the first iteration is never aborted)
+     */
+    private boolean canStop;
+    /**
+     * Tells if the search was aborted
+     */
+    private boolean stopped;
+    /**
+     * Set by another thread to abort the search
+     */
+    volatile boolean abort;
+    /**
+     * Legal moves at root, ordered by the notes of previous iteration
+     */
+    private final int[] rootMoves = new int[6];
+    /**
+     * Notes of root moves in last iteration
+     */
+    private final int[] rootNotes = new int[6];
+    /**
+     * Number of legal moves at root
+     */
+    private int rootCount;
+    /**
+     * Two killer moves per ply: moves that caused a cutoff in a sibling
+     */
+    private final int[][] killers = new int[Board.MAX_PLY][2];
+    /**
+     * History of cutoffs per move, weighted by depth
+     */
+    private final int[] history = new int[12];
+    /**
+     * Moves to try and their ordering scores, per ply
+     */
+    private final int[][] moveList = new int[Board.MAX_PLY][6];
+    private final int[][] moveScores = new int[Board.MAX_PLY][6];
+    /**
+     * Tells if moves after the first one are searched with a null window
+     * (principal variation search)
+     */
+    boolean pvs = true;
+    /**
+     * Half width of the aspiration window around the note of the previous
+     * iteration, 0 for a full window
+     */
+    int aspiration;
+    /**
+     * Depth reduction of late moves, 0 for none
+     */
+    int lmrReduction;
+    /**
+     * Minimum remaining depth to reduce late moves
+     */
+    int lmrDepth;
+    /**
+     * Number of moves searched at full depth before reducing
+     */
+    int lmrMoves;
+    /**
+     * Tells if captures are searched beyond the horizon (quiescence search)
+     */
+    boolean quiescence;
+    /**
+     * Number of nodes that had a beta cutoff
+     */
+    long cutoffs;
+    /**
+     * Number of beta cutoffs caused by the first move tried
+     */
+    long firstMoveCutoffs;
+    /**
+     * Number of calls to the evaluation function
+     */
+    long evaluations;
+    /**
+     * Number of probes of the transposition table, of those that found an
+     * entry and of those that cut the search
+     */
+    long probes;
+    long hits;
+    long hashCutoffs;
+    /**
+     * Time from the start of the search to the end of each completed
+     * iteration in nanoseconds, per depth
+     */
+    final long[] iterationTimes = new long[IA.MAX_ITERATION_DEPTH + 1];
+    /**
+     * Listener of completed iterations or null
+     */
+    SearchListener listener;
+    /**
+     * Random generator to choose between root moves with the same note
+     */
+    SplittableRandom random = new SplittableRandom();
+
+    /**
+     * Constructor.
+     *
+     * @param table The transposition table
+     */
+    Search(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Prepare a search.
+     *
+     * @param board    The board as an <code>int[]</code>
+     * @param side     The side to move
+     * @param moves    The legal moves as a bitmask
+     * @param rotation Number of root moves to rotate, so that parallel
+     *                 searches start with different moves
+     */
+    void setup(int[] board, int side, int moves, int rotation) {
+        position.set(board);
+        this.side = side;
+        rootCount = 0;
+        for (int move = 0; move < 12; move++)
+            if ((moves & (1 << move)) != 0)
+                rootMoves[rootCount++] = move;
+        for (int i = 0; i < rotation % rootCount; i++) {
+            int move = rootMoves[0];
+            System.arraycopy(rootMoves, 1, rootMoves, 0, rootCount - 1);
+            rootMoves[rootCount - 1] = move;
+        }
+        nodes = 0;
+        depthReached = 0;
+        bestNote = 0;
+        abort = false;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        evaluations = 0;
+        probes = 0;
+        hits = 0;
+        hashCutoffs = 0;
+        for (int i = 0; i < killers.length; i++)
+            killers[i][0] = killers[i][1] = IA.NULL;
+        for (int i = 0; i < history.length; i++)
+            history[i] >>= 2;
+    }
+
+    /**
+     * Forget the history of previous searches, so that a search does not
+     * depend on the ones before.
+     */
+    void clearHistory() {
+        for (int i = 0; i < history.length; i++)
+            history[i] = 0;
+    }
+
+    /**
+     * Run iterative deepening.
+     *
+     * @param firstDepth First iteration depth
+     * @param maxDepth   Maximum iteration depth
+     * @param start      Start time of the search (see <code>System.nanoTime()</code>)
+     * @param soft       Soft time limit in nanoseconds or 0 for none
+     * @param deadline   Time at which the search must be aborted
+     * @return The best move of the last completed iteration
+     */
+    int think(int firstDepth, int maxDepth, long start, long soft, long deadline) {
+        this.deadline = deadline;
+        canStop = false;
+        stopped = false;
+        int bestMove = rootMoves[0];
+        for (int depth = firstDepth; depth <= maxDepth; depth++) {
+            // search in a window around the previous note, then widen the
+            // side of the window that failed
+            int alpha = -INFINITY;
+            int beta = INFINITY;
+            if (aspiration > 0 && depth > firstDepth) {
+                alpha = Math.max(-INFINITY, bestNote - aspiration);
+                beta = Math.min(INFINITY, bestNote + aspiration);
+            }
+            int move = searchRoot(depth, alpha, beta);
+            while (!stopped && (bestNote <= alpha && alpha > -INFINITY
+                    || bestNote >= beta && beta < INFINITY)) {
+                if (bestNote <= alpha)
+                    alpha = -INFINITY;
+                else
+                    beta = INFINITY;
+                move = searchRoot(depth, alpha, beta);
+            }
+            if (stopped)
+                break;
+            bestMove = move;
+            depthReached = depth;
+            canStop = true;
+            long elapsed = System.nanoTime() - start;
+            iterationTimes[depth] = elapsed;
+            if (listener != null)
+                listener.iteration(depth, bestNote, move, nodes, elapsed);
+            if (soft > 0 && elapsed >= soft)
+                break;
+        }
+        return (bestMove);
+    }
+
+    /**
+     * Recurrent function for search of moves. This is a negamax with
+     * alpha-beta pruning and a transposition table. With <code>pvs</code>,
+     * moves after the first one are only tested against alpha with a null
+     * window, and late quiet moves are tested at reduced depth; they are
+     * searched again with the full window if they beat alpha. With
+     * <code>quiescence</code>, captures are searched beyond the horizon.
+     *
+     * @param depth Remaining depth in half plays
+     * @param alpha Lower bound of the search window
+     * @param beta  Upper bound of the search window
+     * @return The note of the position for the side to move
+     */
+    private int search(int depth, int alpha, int beta) {
+        if (depth == 0 && quiescence)
+            return (quiesce(alpha, beta));
+        if ((++nodes & 1023) == 0 && (abort || (canStop && System.nanoTime() >= deadline)))
+            stopped = true;
+        if (stopped)
+            return (0);
+        if (endgame != null) {
+            int captures = endgame.probe(position.pits, side);
+            if (captures != EndgameDatabase.UNKNOWN)
+                return (Eval.endNote(side * (position.pits[12] - position.pits[13]) + captures));
+        }
+        if (depth == 0) {
+            evaluations++;
+            return (eval.evaluate(position.features, side));
+        }
+        long key = position.key(side);
+        long entry = table.probe(key);
+        probes++;
+        int hashMove = IA.NULL;
+        if (entry != 0) {
+            hits++;
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int note = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && note >= beta)
+                        || (bound == TranspositionTable.UPPER && note <= alpha)) {
+                    hashCutoffs++;
+                    return (note);
+                }
+            }
+        }
+        int alphaOrig = alpha;
+        int bestNote = -INFINITY;
+        int bestMove = IA.NULL;
+        int ply = position.ply();
+        int count = orderMoves(ply, hashMove);
+        int[] moves = moveList[ply];
+        int[] scores = moveScores[ply];
+        int tried = 0;
+        for (int n = 0; n < count && alpha < beta; n++) {
+            int move = moves[n];
+            if (position.make(move, side)) {
+                side = -side;
+                int note;
+                if (tried == 0 || !pvs)
+                    note = -search(depth - 1, -beta, -alpha);
+                else {
+                    // scout with a null window, late quiet moves at reduced
+                    // depth, and search again if the move may be better
+                    int reduction = (lmrReduction > 0 && depth >= lmrDepth && tried >= lmrMoves
+                            && scores[n] < KILLER_SCORE ? lmrReduction : 0);
+                    note = -search(Math.max(0, depth - 1 - reduction), -alpha - 1, -alpha);
+                    if (note > alpha && reduction > 0)
+                        note = -search(depth - 1, -alpha - 1, -alpha);
+                    if (note > alpha && note < beta)
+                        note = -search(depth - 1, -beta, -alpha);
+                }
+                side = -side;
+                position.unmake();
+                if (stopped)
+                    return (0);
+                tried++;
+                if (note > bestNote) {
+                    bestNote = note;
+                    bestMove = move;
+                    if (note > alpha)
+                        alpha = note;
+                }
+            }
+        }
+        if (bestNote >= beta) {
+            cutoffs++;
+            if (tried == 1)
+                firstMoveCutoffs++;
+            if (!isCapture(bestMove) && killers[ply][0] != bestMove) {
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = bestMove;
+            }
+            history[bestMove] += depth * depth;
+            if (history[bestMove] > HISTORY_MAX)
+                for (int i = 0; i < history.length; i++)
+                    history[i] >>= 1;
+        }
+        if (bestMove == IA.NULL)
+            bestNote = eval.endEvaluation(position.pits, side);
+        int bound = (bestNote <= alphaOrig ? TranspositionTable.UPPER :
+                bestNote >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT);
+        table.store(key, depth, bound, bestNote, bestMove);
+        return (bestNote);
+    }
+
+    /**
+     * Quiescence search at the horizon: only captures are searched, until
+     * the position is quiet. As the side to move is not forced to capture,
+     * it may stand pat with the note of the evaluation function, which
+     * cuts off if it is above beta. Captures remove seeds from the board,
+     * so sequences of captures are short.
+     *
+     * @param alpha Lower bound of the search window
+     * @param beta  Upper bound of the search window
+     * @return The note of the position for the side to move
+     */
+    private int quiesce(int alpha, int beta) {
+        if ((++nodes & 1023) == 0 && (abort || (canStop && System.nanoTime() >= deadline)))
+            stopped = true;
+        if (stopped)
+            return (0);
+        if (endgame != null) {
+            int captures = endgame.probe(position.pits, side);
+            if (captures != EndgameDatabase.UNKNOWN)
+                return (Eval.endNote(side * (position.pits[12] - position.pits[13]) + captures));
+        }
+        evaluations++;
+        int bestNote = eval.evaluate(position.features, side);
+        int ply = position.ply();
+        if (bestNote >= beta || ply >= Board.MAX_PLY - 1)
+            return (bestNote);
+        if (bestNote > alpha)
+            alpha = bestNote;
+        int count = orderCaptures(ply);
+        int[] moves = moveList[ply];
+        for (int n = 0; n < count && alpha < beta; n++) {
+            int move = moves[n];
+            if (position.make(move, side)) {
+                side = -side;
+                int note = -quiesce(-beta, -alpha);
+                side = -side;
+                position.unmake();
+                if (stopped)
+                    return (0);
+                if (note > bestNote) {
+                    bestNote = note;
+                    if (note > alpha)
+                        alpha = note;
+                }
+            }
+        }
+        return (bestNote);
+    }
+
+    /**
+     * Order the captures of a node, biggest first. Legality is checked when
+     * they are played.
+     *
+     * @param ply The ply of the node
+     * @return The number of captures
+     */
+    private int orderCaptures(int ply) {
+        int[] moves = moveList[ply];
+        int[] scores = moveScores[ply];
+        int[] pits = position.pits;
+        int first = (side == IA.NORTH ? 0 : 6);
+        int count = 0;
+        for (int move = first; move < first + 6; move++) {
+            if (pits[move] == 0 || !isCapture(move))
+                continue;
+            int score = pits[(move + pits[move] % 11) % 12];
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                moves[i] = moves[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            moves[i] = move;
+            scores[i] = score;
+        }
+        return (count);
+    }
+
+    /**
+     * Order the moves of a node: the move of the transposition table first,
+     * then captures (biggest first), then killer moves, then other moves
+     * by history. Moves are only sorted, legality is checked when they are
+     * played.
+     *
+     * @param ply      The ply of the node
+     * @param hashMove The move of the transposition table or
+     *                 <code>IA.NULL</code>
+     * @return The number of moves
+     */
+    private int orderMoves(int ply, int hashMove) {
+        int[] moves = moveList[ply];
+        int[] scores = moveScores[ply];
+        int[] pits = position.pits;
+        int first = (side == IA.NORTH ? 0 : 6);
+        int count = 0;
+        for (int move = first; move < first + 6; move++) {
+            if (pits[move] == 0)
+                continue;
+            int score;
+            if (move == hashMove)
+                score = HASH_SCORE;
+            else if (isCapture(move))
+                score = CAPTURE_SCORE + pits[(move + pits[move] % 11) % 12];
+            else if (move == killers[ply][0])
+                score = KILLER_SCORE + 1;
+            else if (move == killers[ply][1])
+                score = KILLER_SCORE;
+            else
+                score = history[move];
+            // insertion sort, best score first
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                moves[i] = moves[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            moves[i] = move;
+            scores[i] = score;
+        }
+        return (count);
+    }
+
+    /**
+     * Tell if a move captures: the last seed falls in a hole of the other
+     * side that then holds 2 or 3 seeds.
+     *
+     * @param move The move
+     * @return A <code>boolean</code> that tells if the move captures
+     */
+    private boolean isCapture(int move) {
+        int seeds = position.pits[move];
+        int last = (move + seeds % 11) % 12;
+        if ((last < 6) == (move < 6))
+            return (false);
+        int after = position.pits[last] + seeds / 11 + 1;
+        return (after == 2 || after == 3);
+    }
+
+    /**
+     * Search the root position. Root moves are searched in the order of the
+     * notes of the previous iteration. Moves with the same note are chosen
+     * randomly, so each of them is searched with a window that makes its
+     * note exact if it equals the best one. With <code>pvs</code>, a move
+     * is first tested with a null window at the best note minus one.
+     * <p>
+     * If the best note is outside of the window, the search stops and the
+     * note is a bound: the caller searches again with a wider window.
+     *
+     * @param depth Depth of the search in half plays
+     * @param alpha Lower bound of the search window
+     * @param beta  Upper bound of the search window
+     * @return The best move
+     */
+    private int searchRoot(int depth, int alpha, int beta) {
+        int bestNote = -INFINITY;
+        int bestMove = IA.NULL;
+        for (int i = 0; i < rootCount && bestNote < beta; i++) {
+            int move = rootMoves[i];
+            int lower = (i == 0 ? alpha : Math.max(alpha, bestNote - 1));
+            position.make(move, side);
+            side = -side;
+            int note;
+            if (i == 0 || !pvs)
+                note = -search(depth - 1, -beta, -lower);
+            else {
+                note = -search(depth - 1, -lower - 1, -lower);
+                if (note > lower && note < beta)
+                    note = -search(depth - 1, -beta, -lower);
+            }
+            side = -side;
+            position.unmake();
+            if (stopped)
+                return (IA.NULL);
+            rootNotes[i] = note;
+            if (note > bestNote || (note == bestNote && random.nextBoolean())) {
+                bestNote = note;
+                bestMove = move;
+            }
+        }
+        // sort root moves for next iteration, best move first
+        for (int i = 1; i < rootCount; i++) {
+            int move = rootMoves[i];
+            int note = rootNotes[i];
+            int key = (move == bestMove ? INFINITY : note);
+            int j = i - 1;
+            while (j >= 0 && (rootMoves[j] == bestMove ? INFINITY : rootNotes[j]) < key) {
+                rootMoves[j + 1] = rootMoves[j];
+                rootNotes[j + 1] = rootNotes[j];
+                j--;
+            }
+            rootMoves[j + 1] = move;
+            rootNotes[j + 1] = note;
+        }
+        this.bestNote = bestNote;
+        int bound = (bestNote <= alpha ? TranspositionTable.UPPER :
+                bestNote >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT);
+        table.store(position.key(side), depth, bound, bestNote, bestMove);
+        return (bestMove);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.SplittableRandom;
+
+/**
+ * Mutable state of a search run by <code>SearchEngine</code>: the search
+ * itself with its killer moves and history, its own transposition table,
+ * a board and a random generator. A context is used by one thread at a
+ * time and returned to the pool of the engine after the search, so that
+ * it is reused by later searches of any game.
+ */
+final class SearchContext {
+
+    /**
+     * Transposition table, private to this context
+     */
+    final TranspositionTable table;
+    /**
+     * The search
+     */
+    final Search search;
+    /**
+     * Board to check moves
+     */
+    final Board position = new Board();
+    /**
+     * Random generator of this context, used unless a search is seeded
+     */
+    final SplittableRandom random;
+    /**
+     * Generation of the engine configuration this context was made for
+     */
+    final int generation;
+
+    /**
+     * Constructor.
+     *
+     * @param hashSize   Size of the transposition table in megabytes
+     * @param eval       The evaluation function
+     * @param endgame    The endgame database or null
+     * @param random     The random generator
+     * @param generation Generation of the engine configuration
+     */
+    SearchContext(int hashSize, Eval eval, EndgameDatabase endgame, SplittableRandom random,
+                  int generation) {
+        this.table = new TranspositionTable(hashSize);
+        this.search = new Search(table);
+        this.random = random;
+        this.generation = generation;
+        search.eval = eval;
+        search.endgame = endgame;
+        search.random = random;
+    }
+
+    /**
+     * Forget previous searches, so that the next one gives the same result
+     * as in a new context.
+     */
+    void clear() {
+        table.clear();
+        search.clearHistory();
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reentrant engine: unlike <code>IA</code>, it holds no game, so that one
+ * engine serves any number of games from any number of threads. Each
+ * search borrows a <code>SearchContext</code> from a pool, with its own
+ * transposition table and random generator, and returns it afterwards:
+ * concurrent searches share no mutable state, and there are as many
+ * contexts as concurrent searches, not as games.
+ * <p>
+ * A search runs in the calling thread. Options are public fields as in
+ * <code>IA</code>, read at the start of each search: set them before the
+ * engine is shared between threads.
+ * <p>
+ * Moves with the same note are chosen randomly. A seeded search clears
+ * its context first, so that it gives the same move for the same position
+ * and seed, whatever was searched before.
+ */
+final class SearchEngine implements Engine {
+
+    /**
+     * Thinking depth in half plays
+     */
+    public int level = 8;
+    /**
+     * Soft and hard time limits in milliseconds, see <code>IA</code>
+     */
+    public long softTimeLimit = 0;
+    public long hardTimeLimit = 0;
+    /**
+     * Search options, see <code>IA</code>
+     */
+    public boolean pvs = true;
+    public int aspirationWindow = 100;
+    public int lateMoveReduction = 2;
+    public int lateMoveDepth = 3;
+    public int lateMoveCount = 1;
+    public boolean quiescence = false;
+    /**
+     * Margin in notes for moves of the opening book, see <code>IA</code>
+     */
+    public int bookMargin = 40;
+    /**
+     * Size of the transposition table of each context in megabytes
+     */
+    private final int hashSize;
+    /**
+     * Contexts not in use
+     */
+    private final Queue<SearchContext> pool = new ConcurrentLinkedQueue<SearchContext>();
+    /**
+     * Random generator giving the generators of new contexts
+     */
+    private final SplittableRandom seeds = new SplittableRandom();
+    /**
+     * Generation of the configuration, contexts of previous generations
+     * are dropped when released
+     */
+    private volatile int generation;
+    /**
+     * DNA of the evaluation function
+     */
+    private volatile int[] dna = Eval.DNA;
+    /**
+     * Endgame database or null
+     */
+    private volatile EndgameDatabase endgame;
+    /**
+     * Opening book or null
+     */
+    private volatile OpeningBook book;
+    /**
+     * Metrics where moves are recorded or null
+     */
+    private volatile EngineMetrics metrics;
+    /**
+     * Number of contexts created
+     */
+    private int contexts;
+
+    /**
+     * Constructor with default transposition table size.
+     */
+    public SearchEngine() {
+        this(IA.DEFAULT_HASH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hashSize Size of the transposition table of each context in
+     *                 megabytes
+     */
+    public SearchEngine(int hashSize) {
+        this.hashSize = hashSize;
+    }
+
+    /**
+     * Set the DNA of the evaluation function. Searches started after this
+     * call use new contexts.
+     *
+     * @param dna The DNA, see <code>Eval.DNA</code>
+     */
+    public void setDna(int[] dna) {
+        this.dna = new Eval(dna).getDna();
+        reconfigure();
+    }
+
+    /**
+     * @return A copy of the DNA of the evaluation function
+     */
+    public int[] getDna() {
+        return (dna.clone());
+    }
+
+    /**
+     * Set the endgame database. Searches started after this call use new
+     * contexts.
+     *
+     * @param endgame The database or null for none
+     */
+    public void setEndgameDatabase(EndgameDatabase endgame) {
+        this.endgame = endgame;
+        reconfigure();
+    }
+
+    /**
+     * Set the opening book.
+     *
+     * @param book The book or null for none
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Set the metrics where moves are recorded.
+     *
+     * @param metrics The metrics or null for none
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The number of contexts created, that is the maximum number of
+     * concurrent searches since the last change of configuration, plus the
+     * contexts dropped by changes
+     */
+    public synchronized int getContexts() {
+        return (contexts);
+    }
+
+    /**
+     * Look for the best move.
+     *
+     * @param board The board, not modified
+     * @param side  The side to play
+     * @return The best move or <code>IA.NULL</code> if there is no legal move
+     */
+    public int getMove(int[] board, int side) {
+        return (getMove(board, side, false, 0, softTimeLimit, hardTimeLimit));
+    }
+
+    /**
+     * Look for the best move with given time limits, for instance from the
+     * clock of a game.
+     *
+     * @param board The board, not modified
+     * @param side  The side to play
+     * @param soft  Soft time limit in milliseconds, 0 to search to
+     *              <code>level</code>
+     * @param hard  Hard time limit in milliseconds or 0 for none
+     * @return The best move or <code>IA.NULL</code> if there is no legal move
+     */
+    public int getMove(int[] board, int side, long soft, long hard) {
+        return (getMove(board, side, false, 0, soft, hard));
+    }
+
+    /**
+     * A search runs in the calling thread only.
+     *
+     * @return 0
+     */
+    public long getHelperCpuTime() {
+        return (0);
+    }
+
+    /**
+     * Look for the best move, with reproducible choices between moves with
+     * the same note. With a hard time limit, the move may still depend on
+     * the speed of the search.
+     *
+     * @param board The board, not modified
+     * @param side  The side to play
+     * @param seed  The seed of random choices
+     * @return The best move or <code>IA.NULL</code> if there is no legal move
+     */
+    public int getMove(int[] board, int side, long seed) {
+        return (getMove(board, side, true, seed, softTimeLimit, hardTimeLimit));
+    }
+
+    /**
+     * Analyze a position: search it even if it has only one legal move and
+     * ignore the opening book, so that the note is always known.
+     *
+     * @param board The board, not modified
+     * @param side  The side to play
+     * @return The result, with the final note of the game if there is no
+     * legal move
+     */
+    public SearchResult analyze(int[] board, int side) {
+        long start = System.nanoTime();
+        SearchContext context = acquire();
+        try {
+            Search search = context.search;
+            context.position.set(board);
+            int moves = context.position.legalMoves(side);
+            if (moves == 0)
+                return (new SearchResult(IA.NULL, search.eval.endEvaluation(board, side), 0, 0));
+            int move = search(context, board, side, moves, start, softTimeLimit, hardTimeLimit);
+            EngineMetrics metrics = this.metrics;
+            if (metrics != null)
+                metrics.record(EngineMetrics.SEARCH, System.nanoTime() - start, search.nodes,
+                        search.evaluations, search.depthReached, search.cutoffs,
+                        search.firstMoveCutoffs);
+            return (new SearchResult(move, search.bestNote, search.depthReached, search.nodes));
+        } finally {
+            release(context);
+        }
+    }
+
+    /**
+     * Look for the best move in a borrowed context.
+     */
+    private int getMove(int[] board, int side, boolean seeded, long seed, long soft, long hard) {
+        long start = System.nanoTime();
+        SearchContext context = acquire();
+        try {
+            if (seeded)
+                context.clear();
+            SplittableRandom random = (seeded ? new SplittableRandom(seed) : context.random);
+            Search search = context.search;
+            search.random = random;
+            context.position.set(board);
+            int moves = context.position.legalMoves(side);
+            if (moves == 0)
+                return (IA.NULL);
+            EngineMetrics metrics = this.metrics;
+            int move = IA.NULL;
+            int origin = EngineMetrics.FORCED;
+            if (Integer.bitCount(moves) == 1)
+                move = Integer.numberOfTrailingZeros(moves);
+            OpeningBook book = this.book;
+            if (move == IA.NULL && book != null) {
+                origin = EngineMetrics.BOOK;
+                move = book.choose(context.position.key(side), side, bookMargin, random);
+                if (move != IA.NULL && (moves & (1 << move)) == 0)
+                    move = IA.NULL;
+            }
+            if (move == IA.NULL) {
+                origin = EngineMetrics.SEARCH;
+                move = search(context, board, side, moves, start, soft, hard);
+            }
+            if (metrics != null) {
+                boolean searched = (origin == EngineMetrics.SEARCH);
+                metrics.record(origin, System.nanoTime() - start, searched ? search.nodes : 0,
+                        searched ? search.evaluations : 0, searched ? search.depthReached : 0,
+                        searched ? search.cutoffs : 0, searched ? search.firstMoveCutoffs : 0);
+            }
+            return (move);
+        } finally {
+            context.search.random = context.random;
+            release(context);
+        }
+    }
+
+    /**
+     * Run the search of a context.
+     */
+    private int search(SearchContext context, int[] board, int side, int moves, long start,
+                       long soft, long hard) {
+        long deadline = (hard > 0 ? start + hard * 1000000L : Long.MAX_VALUE);
+        int maxDepth = (soft > 0 ? IA.MAX_ITERATION_DEPTH : level);
+        Search search = context.search;
+        search.pvs = pvs;
+        search.aspiration = aspirationWindow;
+        search.lmrReduction = (pvs ? lateMoveReduction : 0);
+        search.lmrDepth = lateMoveDepth;
+        search.lmrMoves = lateMoveCount;
+        search.quiescence = quiescence;
+        context.table.newSearch();
+        search.setup(board, side, moves, 0);
+        return (search.think(1, maxDepth, start, soft * 1000000L, deadline));
+    }
+
+    /**
+     * Borrow a context from the pool, or create one.
+     */
+    private SearchContext acquire() {
+        SearchContext context = pool.poll();
+        if (context != null)
+            return (context);
+        SplittableRandom random;
+        int generation;
+        synchronized (this) {
+            random = seeds.split();
+            generation = this.generation;
+            contexts++;
+        }
+        return (new SearchContext(hashSize, new Eval(dna), endgame, random, generation));
+    }
+
+    /**
+     * Return a context to the pool, unless the configuration changed.
+     */
+    private void release(SearchContext context) {
+        if (context.generation == generation)
+            pool.offer(context);
+    }
+
+    /**
+     * Drop the contexts of the previous configuration.
+     */
+    private synchronized void reconfigure() {
+        generation++;
+        pool.clear();
+    }
+}
@@ -2,12 +2,12 @@
  * This program is free software; you can redistribute it and/or modify it under
  * the terms of the GNU General Public License as published by the Free Software
  * Foundation; either version 2 of the License, or any later version.
- *
+ * 
  * This program is distributed in the hope that it will be useful, but WITHOUT
  * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
  * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
  * details.
- *
+ * 
  * You should have received a copy of the GNU General Public License along with
  * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
  * Place - Suite 330, Boston, MA 02111-1307, USA.
@@ -15,32 +15,21 @@
 
 package net.sweetohm.awele;
 
-import java.awt.Event;
-import java.awt.Frame;
-
 /**
- * This is a Frame that close when clicking on ... the close button!
- *
- * @author Michel Casabianca
+ * Listener of the progress of a search, see <code>IA.setListener()</code>.
+ * It is called by the search thread at the end of each completed
+ * iteration, so it should return quickly.
  */
-public class CloseableFrame
-        extends Frame {
-
-    public CloseableFrame() {
-    }
-
-    public CloseableFrame(String title) {
-        super(title);
-    }
+interface SearchListener {
 
     /**
-     * @deprecated As of JDK version 1.1
-     * replaced by processEvent(AWTEvent).
+     * An iteration of the search is completed.
+     *
+     * @param depth The depth of the iteration in half plays
+     * @param note  The note of the best move, for the side to play
+     * @param move  The best move
+     * @param nodes The number of nodes searched so far, by all threads
+     * @param nanos The time since the start of the search in nanoseconds
      */
-    public boolean handleEvent(Event evt) {
-        if (evt.id == Event.WINDOW_DESTROY) {
-            System.exit(0);
-            return true;
-        } else return super.handleEvent(evt);
-    }
+    void iteration(int depth, int note, int move, long nodes, long nanos);
 }
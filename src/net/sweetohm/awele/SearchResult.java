@@ -0,0 +1,54 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Result of the analysis of a position by <code>SearchEngine</code>.
+ */
+final class SearchResult {
+
+    /**
+     * Best move or <code>IA.NULL</code> if there is no legal move
+     */
+    public final int move;
+    /**
+     * Note of the position for the side to play
+     */
+    public final int note;
+    /**
+     * Depth of the last completed iteration, 0 if there is no legal move
+     */
+    public final int depth;
+    /**
+     * Number of nodes searched
+     */
+    public final long nodes;
+
+    /**
+     * Constructor.
+     *
+     * @param move  Best move
+     * @param note  Note of the position
+     * @param depth Depth of the last completed iteration
+     * @param nodes Number of nodes searched
+     */
+    SearchResult(int move, int note, int depth, long nodes) {
+        this.move = move;
+        this.note = note;
+        this.depth = depth;
+        this.nodes = nodes;
+    }
+}
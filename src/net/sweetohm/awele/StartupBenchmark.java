@@ -0,0 +1,147 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Measure the time to first move of engine processes speaking the text
+ * protocol (see <code>Protocol</code>): from the start of the process to
+ * the first <code>bestmove</code> answer. Each command line is run a number
+ * of times, and the median, minimum and maximum times are printed.
+ * <p>
+ * A process searches the initial position, then plays a number of moves,
+ * searching each position. With several moves, it gives a representative
+ * workload to train class data sharing archives.
+ * <p>
+ * Usage: <code>StartupBenchmark [options] command ...</code>, each command
+ * being a single argument, with options:
+ * <ul>
+ * <li><code>-runs n</code>: processes started per command (10),
+ * <li><code>-depth n</code>: search depth in half plays (6),
+ * <li><code>-moves n</code>: moves searched per process (1).
+ * </ul>
+ */
+final class StartupBenchmark {
+
+    /**
+     * Search depth in half plays
+     */
+    private final int depth;
+    /**
+     * Moves searched per process
+     */
+    private final int moves;
+
+    /**
+     * Constructor.
+     *
+     * @param depth Search depth in half plays
+     * @param moves Moves searched per process
+     */
+    StartupBenchmark(int depth, int moves) {
+        this.depth = depth;
+        this.moves = moves;
+    }
+
+    /**
+     * Run an engine process.
+     *
+     * @param command The command line, words being separated by spaces
+     * @return The time to first move in nanoseconds
+     * @throws IOException If the process fails or ends before its first move
+     */
+    public long run(String command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command.trim().split("\\s+"))
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        long first = 0;
+        try {
+            PrintStream in = new PrintStream(process.getOutputStream(), true);
+            BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            in.println("position start");
+            for (int i = 0; i < moves; i++) {
+                in.println("go depth " + depth);
+                String move = bestMove(out, command);
+                if (i == 0)
+                    first = System.nanoTime() - start;
+                if (move.equals("none"))
+                    break;
+                in.println("moves " + move);
+            }
+            in.println("quit");
+            if (process.waitFor() != 0)
+                throw new IOException("Process failed: " + command);
+        } finally {
+            process.destroy();
+        }
+        return (first);
+    }
+
+    /**
+     * Read answers up to the best move.
+     */
+    private static String bestMove(BufferedReader out, String command) throws IOException {
+        String line;
+        while ((line = out.readLine()) != null) {
+            if (line.startsWith("bestmove "))
+                return (line.substring(9).trim());
+            if (line.startsWith("error "))
+                throw new IOException(line + ": " + command);
+        }
+        throw new IOException("No move from: " + command);
+    }
+
+    /**
+     * Measure start-up of command lines.
+     *
+     * @param args Options, then command lines
+     */
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        int depth = 6;
+        int moves = 1;
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-runs"))
+                runs = Integer.parseInt(value);
+            else if (args[i].equals("-depth"))
+                depth = Integer.parseInt(value);
+            else if (args[i].equals("-moves"))
+                moves = Integer.parseInt(value);
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+        if (i == args.length) {
+            System.err.println("Usage: StartupBenchmark [options] command ...");
+            System.exit(1);
+        }
+        StartupBenchmark benchmark = new StartupBenchmark(depth, moves);
+        for (String command : Arrays.asList(args).subList(i, args.length)) {
+            long[] times = new long[runs];
+            for (int run = 0; run < runs; run++)
+                times[run] = benchmark.run(command);
+            Arrays.sort(times);
+            System.out.printf("%6.1f ms (%.1f - %.1f)  %s%n", times[runs / 2] / 1e6,
+                    times[0] / 1e6, times[runs - 1] / 1e6, command);
+        }
+    }
+}
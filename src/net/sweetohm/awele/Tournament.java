@@ -0,0 +1,546 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless tournament between two engine configurations. Games are played
+ * in parallel, one per thread, by pairs: both games of a pair start with
+ * the same random opening, each engine playing south (who moves first)
+ * in one of them. The tournament stops after a given number of games or
+ * as soon as a sequential probability ratio test (SPRT) decides between
+ * two Elo hypotheses.
+ * <p>
+ * A game ends when the side to move has no legal move, when a side has
+ * captured more than half of the seeds or after <code>MAX_PLIES</code>
+ * half plays. The side that captured more seeds wins.
+ * <p>
+ * Engines are alpha-beta (<code>SearchEngine</code>) or Monte-Carlo tree
+ * search (<code>MctsEngine</code>) engines. The CPU time of the thread
+ * playing and of the helper threads of the engine is measured for each
+ * move, and reports give the mean CPU time per move of each engine, to
+ * compare strength per CPU-second.
+ * <p>
+ * Usage: <code>Tournament [options]</code> with options:
+ * <ul>
+ * <li><code>-a config</code> and <code>-b config</code>: configurations of
+ * the engines, as comma separated <code>key=value</code> pairs among
+ * <code>engine</code> (<code>ab</code> or <code>mcts</code>),
+ * <code>level</code>, <code>time</code> (soft limit in milliseconds, hard
+ * limit is twice), <code>hash</code> (transposition table size, or memory
+ * of trees, in megabytes), <code>playouts</code>, <code>exploration</code>,
+ * <code>greed</code> and <code>threads</code> (Monte-Carlo options, see
+ * <code>MctsEngine</code>, one search thread by default), <code>pvs</code>
+ * (0 or 1), <code>lmr</code> (late move reduction), <code>lmrmoves</code>
+ * (moves searched before reducing),
+ * <code>aspiration</code> (half width of aspiration windows),
+ * <code>quiescence</code> (0 or 1) and
+ * <code>dna</code> (7 values separated with
+ * <code>:</code>), for instance <code>level=10,dna=100:20:40:0:80:70:60</code>,
+ * <li><code>-games n</code>: maximum number of games (default 1000),
+ * <li><code>-threads n</code>: number of threads (default all cores),
+ * <li><code>-opening n</code>: number of random half plays of openings
+ * (default 4),
+ * <li><code>-seed n</code>: seed of openings,
+ * <li><code>-sprt elo0,elo1</code>: hypotheses of the SPRT, in Elo of A
+ * over B (default 0,10), with alpha = beta = 0.05.
+ * </ul>
+ */
+final class Tournament {
+
+    /**
+     * Maximum number of half plays of a game
+     */
+    static final int MAX_PLIES = 300;
+    /**
+     * Error probabilities of the SPRT
+     */
+    private static final double ALPHA = 0.05;
+    private static final double BETA = 0.05;
+    /**
+     * Configurations of engines A and B
+     */
+    private final Config a;
+    private final Config b;
+    /**
+     * Maximum number of games
+     */
+    private final int games;
+    /**
+     * Number of random half plays of openings
+     */
+    private final int openingPlies;
+    /**
+     * Seed of openings
+     */
+    private final long seed;
+    /**
+     * Hypotheses of the SPRT, in Elo
+     */
+    private final double elo0;
+    private final double elo1;
+    /**
+     * Index of the next pair of games to play
+     */
+    private final AtomicInteger nextPair = new AtomicInteger();
+    /**
+     * Games won, lost and drawn by A
+     */
+    private int wins;
+    private int losses;
+    private int draws;
+    /**
+     * CPU time in nanoseconds and number of moves of engines A and B
+     */
+    private final AtomicLong cpuA = new AtomicLong();
+    private final AtomicLong cpuB = new AtomicLong();
+    private final AtomicLong movesA = new AtomicLong();
+    private final AtomicLong movesB = new AtomicLong();
+    /**
+     * Tells that the tournament is over
+     */
+    private volatile boolean over;
+    /**
+     * Result of the SPRT: 1 if H1 is accepted, -1 if H0 is accepted, 0
+     * while undecided
+     */
+    private int decision;
+
+    /**
+     * Configuration of an engine.
+     */
+    static final class Config {
+
+        /**
+         * Tells if the engine is a Monte-Carlo tree search
+         */
+        boolean mcts;
+
+        /**
+         * Search depth in half plays
+         */
+        int level = 8;
+        /**
+         * Soft time limit in milliseconds, 0 for fixed depth
+         */
+        long time;
+        /**
+         * Transposition table size in megabytes
+         */
+        int hash = IA.DEFAULT_HASH_SIZE;
+        /**
+         * Search options, see <code>IA</code>
+         */
+        boolean pvs = true;
+        int lmr = -1;
+        int lmrMoves = -1;
+        int aspiration = -1;
+        boolean quiescence = false;
+        /**
+         * Monte-Carlo options, see <code>MctsEngine</code>. Searches use one
+         * thread by default, as games already run one per core
+         */
+        int playouts = -1;
+        double exploration = -1;
+        double greed = -1;
+        int threads = 1;
+        /**
+         * DNA of the evaluation function
+         */
+        int[] dna = Eval.DNA.clone();
+
+        /**
+         * Parse a configuration.
+         *
+         * @param text Comma separated <code>key=value</code> pairs
+         * @return The configuration
+         */
+        static Config parse(String text) {
+            Config config = new Config();
+            for (String pair : text.split(",")) {
+                String[] entry = pair.split("=", 2);
+                if (entry.length != 2)
+                    throw new IllegalArgumentException("Bad configuration: " + pair);
+                if (entry[0].equals("engine")) {
+                    if (!entry[1].equals("ab") && !entry[1].equals("mcts"))
+                        throw new IllegalArgumentException("Unknown engine: " + entry[1]);
+                    config.mcts = entry[1].equals("mcts");
+                } else if (entry[0].equals("level"))
+                    config.level = Integer.parseInt(entry[1]);
+                else if (entry[0].equals("time"))
+                    config.time = Long.parseLong(entry[1]);
+                else if (entry[0].equals("hash"))
+                    config.hash = Integer.parseInt(entry[1]);
+                else if (entry[0].equals("pvs"))
+                    config.pvs = !entry[1].equals("0");
+                else if (entry[0].equals("lmr"))
+                    config.lmr = Integer.parseInt(entry[1]);
+                else if (entry[0].equals("lmrmoves"))
+                    config.lmrMoves = Integer.parseInt(entry[1]);
+                else if (entry[0].equals("aspiration"))
+                    config.aspiration = Integer.parseInt(entry[1]);
+                else if (entry[0].equals("quiescence"))
+                    config.quiescence = !entry[1].equals("0");
+                else if (entry[0].equals("playouts"))
+                    config.playouts = Integer.parseInt(entry[1]);
+                else if (entry[0].equals("exploration"))
+                    config.exploration = Double.parseDouble(entry[1]);
+                else if (entry[0].equals("greed"))
+                    config.greed = Double.parseDouble(entry[1]);
+                else if (entry[0].equals("threads"))
+                    config.threads = Integer.parseInt(entry[1]);
+                else if (entry[0].equals("dna")) {
+                    String[] values = entry[1].split(":");
+                    config.dna = new int[values.length];
+                    for (int i = 0; i < values.length; i++)
+                        config.dna[i] = Integer.parseInt(values[i]);
+                } else
+                    throw new IllegalArgumentException("Unknown key: " + entry[0]);
+            }
+            return (config);
+        }
+
+        /**
+         * Create an engine with this configuration.
+         *
+         * @return The engine
+         */
+        Engine engine() {
+            if (mcts) {
+                MctsEngine engine = new MctsEngine(hash);
+                engine.softTimeLimit = time;
+                engine.hardTimeLimit = 2 * time;
+                if (playouts >= 0)
+                    engine.playouts = playouts;
+                if (exploration >= 0)
+                    engine.exploration = exploration;
+                if (greed >= 0)
+                    engine.greed = greed;
+                engine.threads = threads;
+                return (engine);
+            }
+            SearchEngine engine = new SearchEngine(hash);
+            engine.level = level;
+            engine.softTimeLimit = time;
+            engine.hardTimeLimit = 2 * time;
+            engine.pvs = pvs;
+            if (lmr >= 0)
+                engine.lateMoveReduction = lmr;
+            if (lmrMoves >= 0)
+                engine.lateMoveCount = lmrMoves;
+            if (aspiration >= 0)
+                engine.aspirationWindow = aspiration;
+            engine.quiescence = quiescence;
+            engine.setDna(dna);
+            return (engine);
+        }
+
+        public String toString() {
+            StringBuilder buffer = new StringBuilder();
+            if (mcts) {
+                buffer.append("engine=mcts");
+                if (time > 0)
+                    buffer.append(",time=").append(time);
+                buffer.append(",hash=").append(hash);
+                if (playouts >= 0)
+                    buffer.append(",playouts=").append(playouts);
+                if (exploration >= 0)
+                    buffer.append(",exploration=").append(exploration);
+                if (greed >= 0)
+                    buffer.append(",greed=").append(greed);
+                if (threads != 1)
+                    buffer.append(",threads=").append(threads);
+                return (buffer.toString());
+            }
+            buffer.append("level=").append(level);
+            if (time > 0)
+                buffer.append(",time=").append(time);
+            buffer.append(",hash=").append(hash);
+            if (!pvs)
+                buffer.append(",pvs=0");
+            if (lmr >= 0)
+                buffer.append(",lmr=").append(lmr);
+            if (lmrMoves >= 0)
+                buffer.append(",lmrmoves=").append(lmrMoves);
+            if (aspiration >= 0)
+                buffer.append(",aspiration=").append(aspiration);
+            if (quiescence)
+                buffer.append(",quiescence=1");
+            buffer.append(",dna=");
+            for (int i = 0; i < dna.length; i++)
+                buffer.append(i > 0 ? ":" : "").append(dna[i]);
+            return (buffer.toString());
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param a            Configuration of engine A
+     * @param b            Configuration of engine B
+     * @param games        Maximum number of games
+     * @param openingPlies Number of random half plays of openings
+     * @param seed         Seed of openings
+     * @param elo0         Elo of A over B under H0
+     * @param elo1         Elo of A over B under H1
+     */
+    Tournament(Config a, Config b, int games, int openingPlies, long seed,
+               double elo0, double elo1) {
+        this.a = a;
+        this.b = b;
+        this.games = games;
+        this.openingPlies = openingPlies;
+        this.seed = seed;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+    }
+
+    /**
+     * Run the tournament.
+     *
+     * @param threads Number of threads
+     * @throws InterruptedException If interrupted while waiting for threads
+     */
+    void run(int threads) throws InterruptedException {
+        final long start = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    Engine engineA = a.engine();
+                    Engine engineB = b.engine();
+                    int[] opening = new int[14];
+                    long[] cpu = new long[4];
+                    int pair;
+                    while (!over && (pair = nextPair.getAndIncrement()) * 2 < games) {
+                        int first = opening(pair, opening);
+                        for (int game = 0; game < 2 && !over; game++) {
+                            int sideA = (game == 0 ? IA.SOUTH : IA.NORTH);
+                            int result = play(opening, first, engineA, engineB, sideA, cpu);
+                            record(result, start);
+                        }
+                    }
+                    cpuA.addAndGet(cpu[0]);
+                    movesA.addAndGet(cpu[1]);
+                    cpuB.addAndGet(cpu[2]);
+                    movesB.addAndGet(cpu[3]);
+                }
+            }, "awele-tournament-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        report(start);
+        if (decision != 0)
+            System.out.println("SPRT: " + (decision > 0 ? "H1" : "H0") + " accepted");
+        System.out.println(String.format("cpu per move: A %.2f ms, B %.2f ms",
+                cpuA.get() / 1e6 / Math.max(1, movesA.get()),
+                cpuB.get() / 1e6 / Math.max(1, movesB.get())));
+    }
+
+    /**
+     * Play the random opening of a pair of games.
+     *
+     * @param pair  Index of the pair
+     * @param board The board to play the opening on
+     * @return The side to move after the opening
+     */
+    private int opening(int pair, int[] board) {
+        Random random = new Random(seed + 0x9E3779B97F4A7C15L * pair);
+        Board position = new Board();
+        IA ia = new IA();
+        ia.Init();
+        position.set(ia.board);
+        int side = IA.SOUTH;
+        for (int ply = 0; ply < openingPlies; ply++) {
+            int moves = position.legalMoves(side);
+            if (moves == 0)
+                break;
+            int n = random.nextInt(Integer.bitCount(moves));
+            for (int move = 0; move < 12; move++) {
+                if ((moves & (1 << move)) != 0 && n-- == 0) {
+                    position.make(move, side);
+                    break;
+                }
+            }
+            side = -side;
+        }
+        position.get(board);
+        return (side);
+    }
+
+    /**
+     * Play a game.
+     *
+     * @param opening The board after the opening
+     * @param side    The side to move after the opening
+     * @param engineA Engine A
+     * @param engineB Engine B
+     * @param sideA   The side of engine A
+     * @param cpu     CPU time in nanoseconds and number of moves of A then
+     *                B, to add to
+     * @return 1 if A wins, -1 if B wins, 0 for a draw
+     */
+    static int play(int[] opening, int side, Engine engineA, Engine engineB, int sideA,
+                    long[] cpu) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int[] board = opening.clone();
+        Board position = new Board();
+        for (int ply = 0; ply < MAX_PLIES && board[12] <= 24 && board[13] <= 24; ply++) {
+            int slot = (side == sideA ? 0 : 2);
+            Engine engine = (side == sideA ? engineA : engineB);
+            long before = threads.getCurrentThreadCpuTime() + engine.getHelperCpuTime();
+            int move = engine.getMove(board, side);
+            cpu[slot] += threads.getCurrentThreadCpuTime() + engine.getHelperCpuTime() - before;
+            cpu[slot + 1]++;
+            if (move == IA.NULL)
+                break;
+            position.set(board);
+            position.make(move, side);
+            position.get(board);
+            side = -side;
+        }
+        int difference = (board[12] - board[13]) * sideA;
+        return (Integer.signum(difference));
+    }
+
+    /**
+     * Record the result of a game, report and run the SPRT.
+     */
+    private synchronized void record(int result, long start) {
+        if (over)
+            return;
+        if (result > 0)
+            wins++;
+        else if (result < 0)
+            losses++;
+        else
+            draws++;
+        int played = wins + losses + draws;
+        double llr = llr();
+        if (llr >= Math.log((1 - BETA) / ALPHA))
+            decision = 1;
+        else if (llr <= Math.log(BETA / (1 - ALPHA)))
+            decision = -1;
+        if (decision != 0 || played >= games)
+            over = true;
+        else if (played % 100 == 0)
+            report(start);
+    }
+
+    /**
+     * Compute the log likelihood ratio of the SPRT, with the normal
+     * approximation of the trinomial distribution of results.
+     *
+     * @return The log likelihood ratio
+     */
+    private double llr() {
+        int played = wins + losses + draws;
+        if (wins == 0 || losses == 0)
+            return (0);
+        double score = (wins + 0.5 * draws) / played;
+        double square = (wins + 0.25 * draws) / played;
+        double variance = (square - score * score) / played;
+        double score0 = 1 / (1 + Math.pow(10, -elo0 / 400));
+        double score1 = 1 / (1 + Math.pow(10, -elo1 / 400));
+        return ((score1 - score0) * (2 * score - score0 - score1) / (2 * variance));
+    }
+
+    /**
+     * Print results.
+     */
+    private synchronized void report(long start) {
+        int played = wins + losses + draws;
+        if (played == 0)
+            return;
+        double score = (wins + 0.5 * draws) / played;
+        double square = (wins + 0.25 * draws) / played;
+        double deviation = Math.sqrt((square - score * score) / played);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(
+                "games %d: +%d -%d =%d, Elo %.1f +/- %.1f, draws %.1f%%, LLR %.2f, %.2f games/s",
+                played, wins, losses, draws, elo(score),
+                (elo(score + 1.96 * deviation) - elo(score - 1.96 * deviation)) / 2,
+                100.0 * draws / played, llr(), played / seconds));
+    }
+
+    /**
+     * Convert a score to an Elo difference.
+     */
+    private static double elo(double score) {
+        score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return (-400 * Math.log10(1 / score - 1));
+    }
+
+    /**
+     * Run a tournament from the command line.
+     *
+     * @param args Options
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Config a = new Config();
+        Config b = new Config();
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingPlies = 4;
+        long seed = System.nanoTime();
+        double elo0 = 0;
+        double elo1 = 10;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length)
+                usage();
+            String value = args[i + 1];
+            if (args[i].equals("-a"))
+                a = Config.parse(value);
+            else if (args[i].equals("-b"))
+                b = Config.parse(value);
+            else if (args[i].equals("-games"))
+                games = Integer.parseInt(value);
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(value);
+            else if (args[i].equals("-opening"))
+                openingPlies = Integer.parseInt(value);
+            else if (args[i].equals("-seed"))
+                seed = Long.parseLong(value);
+            else if (args[i].equals("-sprt")) {
+                String[] hypotheses = value.split(",");
+                elo0 = Double.parseDouble(hypotheses[0]);
+                elo1 = Double.parseDouble(hypotheses[1]);
+            } else
+                usage();
+        }
+        System.out.println("A: " + a);
+        System.out.println("B: " + b);
+        new Tournament(a, b, games, openingPlies, seed, elo0, elo1).run(threads);
+    }
+
+    /**
+     * Print usage and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: Tournament [-a config] [-b config] [-games n] [-threads n]");
+        System.err.println("                  [-opening plies] [-seed n] [-sprt elo0,elo1]");
+        System.err.println("config: level=n,time=ms,hash=mb,pvs=0|1,lmr=n,lmrmoves=n,aspiration=n,quiescence=0|1,");
+        System.err.println("        dna=v0:v1:v2:v3:v4:v5:v6");
+        System.err.println("        engine=mcts,time=ms,hash=mb,playouts=n,exploration=x,greed=x,threads=n");
+        System.exit(1);
+    }
+}
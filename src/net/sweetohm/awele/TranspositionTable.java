@@ -0,0 +1,196 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Fixed size transposition table. The table is made of buckets of two
+ * entries: the first one is replaced only by deeper searches (or entries of
+ * a previous search), the second one is always replaced. Each entry is
+ * stored in two longs: the key XORed with the data and the data, so that a
+ * torn entry is detected as a miss.
+ * <p>
+ * The data packs (from low to high bits) the score (21 bits), the depth
+ * (7 bits), the bound type (2 bits), the best move (4 bits) and the age of
+ * the search (8 bits).
+ * <p>
+ * The table may be shared by searches running in parallel. It holds no
+ * counters, that would be written by all threads on every probe: searches
+ * count their probes.
+ */
+final class TranspositionTable {
+
+    /**
+     * Bound type for a score that is a lower bound (fail high)
+     */
+    public static final int LOWER = 1;
+    /**
+     * Bound type for a score that is an upper bound (fail low)
+     */
+    public static final int UPPER = 2;
+    /**
+     * Bound type for an exact score
+     */
+    public static final int EXACT = 3;
+    /**
+     * Size of an entry in bytes
+     */
+    private static final int ENTRY_SIZE = 16;
+    /**
+     * Offset added to scores so that they are stored as positive values
+     */
+    private static final int SCORE_OFFSET = 1 << 20;
+    /**
+     * Value stored for no move
+     */
+    private static final int NO_MOVE = 15;
+    /**
+     * Keys XORed with data
+     */
+    private long[] keys;
+    /**
+     * Data of entries
+     */
+    private long[] data;
+    /**
+     * Mask for bucket index
+     */
+    private int mask;
+    /**
+     * Age of current search
+     */
+    private int age;
+
+    /**
+     * Constructor.
+     *
+     * @param megabytes The memory budget in megabytes
+     */
+    public TranspositionTable(int megabytes) {
+        resize(megabytes);
+    }
+
+    /**
+     * Resize the table. The table is cleared.
+     *
+     * @param megabytes The memory budget in megabytes
+     */
+    public void resize(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        int entries = Integer.highestOneBit((int) Math.min(bytes / ENTRY_SIZE, 1 << 30));
+        keys = new long[entries];
+        data = new long[entries];
+        mask = (entries - 1) & ~1;
+        clear();
+    }
+
+    /**
+     * Clear the table.
+     */
+    public void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(data, 0);
+        age = 0;
+    }
+
+    /**
+     * Tell the table that a new search starts. Entries of previous searches
+     * are kept but replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+     * Look for an entry.
+     *
+     * @param key The hash of the position as a <code>long</code>
+     * @return The data of the entry or 0 if not found
+     */
+    public long probe(long key) {
+        int index = (int) key & mask;
+        for (int i = index; i < index + 2; i++) {
+            long d = data[i];
+            if (d != 0 && (keys[i] ^ d) == key)
+                return (d);
+        }
+        return (0);
+    }
+
+    /**
+     * Store an entry.
+     *
+     * @param key   The hash of the position as a <code>long</code>
+     * @param depth The search depth
+     * @param bound The bound type
+     * @param score The score
+     * @param move  The best move or <code>IA.NULL</code>
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int index = (int) key & mask;
+        long d = data[index];
+        int slot = index + 1;
+        if (d == 0 || (keys[index] ^ d) == key || age(d) != age || depth >= depth(d))
+            slot = index;
+        long entry = (score + SCORE_OFFSET)
+                | ((long) Math.min(depth, 127) << 21)
+                | ((long) bound << 28)
+                | ((long) (move == IA.NULL ? NO_MOVE : move) << 30)
+                | ((long) age << 34);
+        keys[slot] = key ^ entry;
+        data[slot] = entry;
+    }
+
+    /**
+     * @param data Entry data
+     * @return The score of the entry
+     */
+    public static int score(long data) {
+        return ((int) (data & 0x1FFFFF) - SCORE_OFFSET);
+    }
+
+    /**
+     * @param data Entry data
+     * @return The depth of the entry
+     */
+    public static int depth(long data) {
+        return ((int) (data >>> 21) & 0x7F);
+    }
+
+    /**
+     * @param data Entry data
+     * @return The bound type of the entry
+     */
+    public static int bound(long data) {
+        return ((int) (data >>> 28) & 0x3);
+    }
+
+    /**
+     * @param data Entry data
+     * @return The best move of the entry or <code>IA.NULL</code>
+     */
+    public static int move(long data) {
+        int move = (int) (data >>> 30) & 0xF;
+        return (move == NO_MOVE ? IA.NULL : move);
+    }
+
+    /**
+     * @param data Entry data
+     * @return The age of the entry
+     */
+    private static int age(long data) {
+        return ((int) (data >>> 34) & 0xFF);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.sweetohm.awele;
+
+/**
+ * Zobrist keys for board hashing. The hash of a board is the XOR of one key
+ * per slot and seed count, so that it can be updated incrementally when the
+ * number of seeds in a hole changes.
+ */
+final class Zobrist {
+
+    /**
+     * Maximum number of seeds in a slot
+     */
+    public static final int MAX_SEEDS = 48;
+    /**
+     * Keys for each slot (12 holes and 2 stores) and each seed count
+     */
+    public static final long[][] KEYS = new long[14][MAX_SEEDS + 1];
+    /**
+     * Key to XOR when south is to move
+     */
+    public static final long SOUTH_TO_MOVE;
+
+    static {
+        // fixed seed so that hashes are the same from one run to another
+        long seed = 0x4157454C45L;
+        for (int i = 0; i < 14; i++)
+            for (int j = 0; j <= MAX_SEEDS; j++) {
+                seed += 0x9E3779B97F4A7C15L;
+                KEYS[i][j] = mix(seed);
+            }
+        seed += 0x9E3779B97F4A7C15L;
+        SOUTH_TO_MOVE = mix(seed);
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     *
+     * @param z The value to mix as a <code>long</code>
+     * @return The mixed value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31));
+    }
+
+    /**
+     * Compute the hash of a board from scratch.
+     *
+     * @param board The board as an <code>int[]</code>
+     * @return The hash as a <code>long</code>
+     */
+    public static long hash(int[] board) {
+        long hash = 0;
+        for (int i = 0; i < 14; i++)
+            hash ^= KEYS[i][board[i]];
+        return (hash);
+    }
+}